@@ -98,6 +98,30 @@ export default function HomeView() {
       });
   }, []); // El array de dependencias vacío asegura que este efecto se ejecute solo una vez al montar
 
+  // useEffect para recibir los cambios de disponibilidad mientras el diálogo de resultados está abierto.
+  // El servidor avisa cuando otra reserva ocupa o libera un coche de la delegación en estas fechas.
+  useEffect(() => {
+    if (!isResultsDialogOpen || !selectedDelegationId || !startDate || !endDate) {
+      return;
+    }
+    const subscription = DelegationEndpoint.subscribeToAvailability(selectedDelegationId, startDate, endDate)
+      .onNext(event => {
+        if (event.available) {
+          // Un coche vuelve a estar libre: repetimos la búsqueda para incluirlo
+          handleAvailabilitySearch();
+        } else {
+          // Un coche ha sido reservado: lo quitamos de la lista sin volver a buscar
+          setAvailableCarsResult(prev => prev ? prev.filter(car => car.operation !== event.carId) : prev);
+        }
+      })
+      .onError(message => {
+        console.error('Error en la suscripción de disponibilidad:', message);
+      });
+
+    // Cancela la suscripción al cerrar el diálogo o cambiar la búsqueda
+    return () => subscription.cancel();
+  }, [isResultsDialogOpen, selectedDelegationId, startDate, endDate]);
+
   // Manejador para el botón "Buscar Disponibilidad" dentro del diálogo
   const handleAvailabilitySearch = async () => {
     setSearchMessage(null); // Limpiar mensajes anteriores
@@ -164,9 +188,8 @@ export default function HomeView() {
     try {
       await DelegationEndpoint.saveBooking(booking);
       setSearchMessage(`Coche ${car.make} ${car.model} reservado con éxito.`);
-      // Opcional: Volver a buscar disponibilidad para actualizar la lista (si la reserva afecta la disponibilidad inmediata)
-      // Esto es importante para que el coche reservado desaparezca de la lista
-      await handleAvailabilitySearch(); // Re-ejecutar la búsqueda para actualizar la lista
+      // El coche reservado desaparece de la lista a través de la suscripción de disponibilidad,
+      // así que no hace falta repetir la búsqueda
       // No cerramos el diálogo de resultados automáticamente para que el usuario vea el mensaje de éxito
     } catch (error) {
       console.error('Error al reservar el coche:', error);
@@ -187,7 +210,8 @@ export default function HomeView() {
 
     if (isVintageMode && isCurrentCarVintage) {
       // Ruta local para coches vintage en modo vintage
-      const localImagePath = `/images/${sanitizeFilenamePart(car.make)}_${sanitizeFilenamePart(car.model)}.webp`;
+      // Variante de 320 px: la miniatura se muestra a 150x100
+      const localImagePath = `/images/${sanitizeFilenamePart(car.make)}_${sanitizeFilenamePart(car.model)}.webp?w=320`;
       console.log("DEBUG: Generated local vintage car image URL:", localImagePath);
       return localImagePath;
     } else {
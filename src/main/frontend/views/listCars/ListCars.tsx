@@ -167,9 +167,15 @@ export default function ListCars() {
               {/* Lógica condicional para la URL de la imagen (API externa o local) */}
               <img
                 src={isVintageMode && isCurrentCarVintage // Solo usa imagen local si el modo vintage está activo Y el coche es vintage
-                  ? `/images/${sanitizeFilenamePart(car.make)}_${sanitizeFilenamePart(car.model)}.webp` // Ruta local para coches vintage
+                  ? `/images/${sanitizeFilenamePart(car.make)}_${sanitizeFilenamePart(car.model)}.webp?w=640` // Ruta local para coches vintage (variante reducida)
                   : `https://cdn.imagin.studio/getimage?customer=img&make=${encodeURIComponent(car.make)}&modelFamily=${encodeURIComponent(car.model)}&paintId=${encodeURIComponent(car.color || '')}&zoomType=fullscreen` // API externa para coches modernos
                 }
+                // Las imágenes locales tienen variantes de 320 y 640 px; el navegador elige según la densidad de pantalla
+                srcSet={isVintageMode && isCurrentCarVintage
+                  ? `/images/${sanitizeFilenamePart(car.make)}_${sanitizeFilenamePart(car.model)}.webp?w=320 320w, /images/${sanitizeFilenamePart(car.make)}_${sanitizeFilenamePart(car.model)}.webp?w=640 640w`
+                  : undefined
+                }
+                sizes="272px"
                 alt={`${car.make} ${car.model}`} // Texto alternativo para la imagen
                 style={{
                   width: '100%',
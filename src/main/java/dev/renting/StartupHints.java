@@ -0,0 +1,71 @@
+package dev.renting;
+
+import dev.renting.delegations.AvailabilityEvent;
+import dev.renting.delegations.BookingPage;
+import dev.renting.delegations.Car;
+import dev.renting.delegations.CarImage;
+import dev.renting.delegations.CarQuote;
+import dev.renting.delegations.Delegation;
+import dev.renting.delegations.DelegationEndpoint;
+import dev.renting.delegations.DelegationOccupancy;
+import dev.renting.delegations.ImageEndpoint;
+import dev.renting.delegations.NearbyCar;
+import dev.renting.delegations.ReservationHold;
+import dev.renting.users.User;
+import dev.renting.users.UserEndpoint;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+
+import java.util.List;
+
+/**
+ * Reflection hints used by Spring AOT processing (the {@code startup} build profile).
+ *
+ * The DynamoDB enhanced client introspects the {@code @DynamoDbBean} classes through
+ * java.beans and binds their getters and setters with method handles, and the Hilla
+ * endpoints read and write their DTOs with Jackson; both need the hints below.
+ */
+public class StartupHints implements RuntimeHintsRegistrar {
+
+    // Every class mapped by the DynamoDB enhanced client, nested ones included
+    static final List<Class<?>> DYNAMODB_BEANS = List.of(
+            Car.class,
+            Delegation.class,
+            dev.renting.delegations.Booking.class,
+            dev.renting.users.Booking.class,
+            User.class);
+
+    private static final List<Class<?>> ENDPOINTS = List.of(
+            DelegationEndpoint.class,
+            ImageEndpoint.class,
+            UserEndpoint.class);
+
+    // Types sent to or received from the frontend besides the DynamoDB beans
+    private static final List<Class<?>> ENDPOINT_DTOS = List.of(
+            NearbyCar.class,
+            AvailabilityEvent.class,
+            DelegationOccupancy.class,
+            ReservationHold.class,
+            BookingPage.class,
+            CarQuote.class,
+            CarImage.class);
+
+    @Override
+    public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+        for (Class<?> bean : DYNAMODB_BEANS) {
+            hints.reflection().registerType(bean,
+                    MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS,
+                    MemberCategory.INVOKE_PUBLIC_METHODS,
+                    MemberCategory.DECLARED_FIELDS);
+        }
+        for (Class<?> endpoint : ENDPOINTS) {
+            hints.reflection().registerType(endpoint, MemberCategory.INVOKE_PUBLIC_METHODS);
+        }
+        BindingReflectionHintsRegistrar binding = new BindingReflectionHintsRegistrar();
+        binding.registerReflectionHints(hints.reflection(), DYNAMODB_BEANS.toArray(new Class<?>[0]));
+        binding.registerReflectionHints(hints.reflection(), ENDPOINT_DTOS.toArray(new Class<?>[0]));
+        hints.resources().registerPattern("META-INF/resources/images/*");
+    }
+}
@@ -0,0 +1,46 @@
+package dev.renting;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.support.ServletRequestHandledEvent;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Prebuilds the DynamoDB table schemas while the context starts, and logs how long after
+ * JVM start the application was ready and served its first request, the number that matters
+ * for instances started on scale-out.
+ */
+@Component
+public class StartupTimer implements SmartInitializingSingleton {
+
+    private final AtomicBoolean firstRequestSeen = new AtomicBoolean();
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        // The enhanced client caches each schema; building them now keeps the introspection off the first requests
+        long start = System.nanoTime();
+        for (Class<?> bean : StartupHints.DYNAMODB_BEANS) {
+            TableSchema.fromBean(bean);
+        }
+        System.out.println("DEBUG: DynamoDB table schemas built in " + (System.nanoTime() - start) / 1_000_000 + " ms.");
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        System.out.println("DEBUG: Application ready " + ManagementFactory.getRuntimeMXBean().getUptime()
+                + " ms after JVM start.");
+    }
+
+    @EventListener
+    public void onRequestHandled(ServletRequestHandledEvent event) {
+        if (!firstRequestSeen.get() && firstRequestSeen.compareAndSet(false, true)) {
+            System.out.println("DEBUG: First request (" + event.getRequestUrl() + ") served "
+                    + ManagementFactory.getRuntimeMXBean().getUptime() + " ms after JVM start.");
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package dev.renting.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Admission control for the anonymous Hilla endpoint calls ({@code /connect/<Endpoint>/<method>}),
+ * so a single client cannot use up the DynamoDB capacity real customers need.
+ *
+ * Every call costs tokens according to the DynamoDB work it does (a point read costs 1, a
+ * full-table scan 50) and must get them from three buckets: one per client address, one per
+ * endpoint method and one shared by all calls. Booking writes may empty the buckets, while
+ * reads must leave {@code renting.admission.read-reserve-percent} of them, so listings are
+ * shed first and bookings still go through under load. Rejected calls get an immediate 429
+ * with Retry-After. Admitted and shed calls per operation are served by
+ * {@code OperationalStatsFilter} under {@code /stats}.
+ * The client address is the one the load balancer forwarded, resolved by Tomcat through
+ * {@code server.forward-headers-strategy=native} from trusted (private-network) proxies only.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class AdmissionControlFilter extends OncePerRequestFilter {
+
+    static final String ENDPOINT_PATH = "/connect/";
+    private static final long DEFAULT_COST = 1;
+
+    // Approximate DynamoDB work per call; calls not listed cost DEFAULT_COST
+    private static final Map<String, Long> COSTS = Map.ofEntries(
+            Map.entry("DelegationEndpoint/getAllBookings", 50L),
+            Map.entry("DelegationEndpoint/getBookingHistory", 50L),
+            Map.entry("DelegationEndpoint/getAllCars", 20L),
+            Map.entry("DelegationEndpoint/getAllProfileDelegations", 20L),
+            Map.entry("DelegationEndpoint/getAvailableCarsNearby", 20L),
+            Map.entry("DelegationEndpoint/getAvailableCars", 10L),
+            Map.entry("DelegationEndpoint/getAvailableCarsQuoted", 10L),
+            Map.entry("DelegationEndpoint/getQuotes", 2L),
+            Map.entry("DelegationEndpoint/listDelegationsById", 2L),
+            Map.entry("DelegationEndpoint/listCarsById", 2L),
+            Map.entry("DelegationEndpoint/getBookingsByDelegation", 2L),
+            Map.entry("DelegationEndpoint/getOccupancy", 1L),
+            Map.entry("DelegationEndpoint/saveBooking", 3L),
+            Map.entry("DelegationEndpoint/deleteBooking", 3L),
+            Map.entry("DelegationEndpoint/placeHold", 1L),
+            Map.entry("DelegationEndpoint/confirmHold", 3L),
+            Map.entry("UserEndpoint/getBookingsByUser", 2L),
+            Map.entry("UserEndpoint/getCarBookingsByUser", 2L),
+            Map.entry("UserEndpoint/saveBooking", 2L));
+
+    // Calls that complete a booking: they may use the capacity reserved away from reads
+    private static final Set<String> PRIORITY = Set.of(
+            "DelegationEndpoint/saveBooking",
+            "DelegationEndpoint/deleteBooking",
+            "DelegationEndpoint/placeHold",
+            "DelegationEndpoint/confirmHold",
+            "DelegationEndpoint/releaseHold",
+            "UserEndpoint/saveBooking");
+
+    private final double clientRate;
+    private final long clientBurst;
+    private final double endpointRate;
+    private final long endpointBurst;
+    private final int readReservePercent;
+    private final long globalBurst;
+    private final TokenBucket global;
+
+    private final Map<String, TokenBucket> clientBuckets = new ConcurrentHashMap<>();
+    private final Map<String, TokenBucket> endpointBuckets = new ConcurrentHashMap<>();
+    private final Map<String, Counts> counts = new ConcurrentHashMap<>();
+    private long shedAtLastReport;
+
+    private static final class Counts {
+        final LongAdder admitted = new LongAdder();
+        final LongAdder shed = new LongAdder();
+    }
+
+    public AdmissionControlFilter(@Value("${renting.admission.client-rate:20}") double clientRate,
+                                  @Value("${renting.admission.client-burst:100}") long clientBurst,
+                                  @Value("${renting.admission.endpoint-rate:200}") double endpointRate,
+                                  @Value("${renting.admission.endpoint-burst:400}") long endpointBurst,
+                                  @Value("${renting.admission.global-rate:500}") double globalRate,
+                                  @Value("${renting.admission.global-burst:1000}") long globalBurst,
+                                  @Value("${renting.admission.read-reserve-percent:20}") int readReservePercent) {
+        this.clientRate = clientRate;
+        this.clientBurst = clientBurst;
+        this.endpointRate = endpointRate;
+        this.endpointBurst = endpointBurst;
+        this.readReservePercent = readReservePercent;
+        this.globalBurst = globalBurst;
+        this.global = new TokenBucket(globalRate, globalBurst);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"POST".equals(request.getMethod())
+                || !request.getRequestURI().startsWith(request.getContextPath() + ENDPOINT_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String operation = request.getRequestURI().substring(request.getContextPath().length() + ENDPOINT_PATH.length());
+        long cost = COSTS.getOrDefault(operation, DEFAULT_COST);
+        boolean priority = PRIORITY.contains(operation);
+        // Unknown paths share one bucket and one set of counters so they cannot grow the maps
+        String key = COSTS.containsKey(operation) || PRIORITY.contains(operation) ? operation : "other";
+
+        TokenBucket client = clientBuckets.computeIfAbsent(request.getRemoteAddr(),
+                address -> new TokenBucket(clientRate, clientBurst));
+        TokenBucket endpoint = endpointBuckets.computeIfAbsent(key, k -> new TokenBucket(endpointRate, endpointBurst));
+
+        long waitNanos = client.tryTake(cost, reserve(clientBurst, priority));
+        if (waitNanos == 0) {
+            waitNanos = endpoint.tryTake(cost, reserve(endpointBurst, priority));
+            if (waitNanos == 0) {
+                waitNanos = global.tryTake(cost, reserve(globalBurst, priority));
+                if (waitNanos != 0) {
+                    endpoint.refund(cost);
+                }
+            }
+            if (waitNanos != 0) {
+                client.refund(cost);
+            }
+        }
+
+        Counts operationCounts = counts.computeIfAbsent(key, k -> new Counts());
+        if (waitNanos != 0) {
+            operationCounts.shed.increment();
+            response.setHeader("Retry-After", Long.toString(Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos) + 1)));
+            response.sendError(429, "Too many requests");
+            return;
+        }
+        operationCounts.admitted.increment();
+        chain.doFilter(request, response);
+    }
+
+    private long reserve(long burst, boolean priority) {
+        return priority ? 0 : burst * readReservePercent / 100;
+    }
+
+    // Operations that have been called at least once, for the stats page
+    public Set<String> getOperations() {
+        return Set.copyOf(counts.keySet());
+    }
+
+    public long getAdmittedCount(String operation) {
+        Counts operationCounts = counts.get(operation);
+        return operationCounts != null ? operationCounts.admitted.sum() : 0;
+    }
+
+    public long getShedCount(String operation) {
+        Counts operationCounts = counts.get(operation);
+        return operationCounts != null ? operationCounts.shed.sum() : 0;
+    }
+
+    // Drops the buckets of clients that have been idle long enough to refill completely
+    @Scheduled(fixedDelay = 60000)
+    public void evictIdleClients() {
+        clientBuckets.values().removeIf(TokenBucket::isFull);
+    }
+
+    @Scheduled(fixedDelayString = "${renting.admission.stats-interval-ms:300000}")
+    public void reportStats() {
+        long shed = counts.values().stream().mapToLong(c -> c.shed.sum()).sum();
+        if (shed == shedAtLastReport) {
+            return;
+        }
+        shedAtLastReport = shed;
+        StringBuilder report = new StringBuilder("DEBUG: Admission control (admitted/shed):");
+        counts.forEach((operation, c) -> report.append(' ').append(operation).append('=')
+                .append(c.admitted.sum()).append('/').append(c.shed.sum()));
+        System.out.println(report);
+    }
+}
@@ -4,11 +4,16 @@ package dev.renting.config;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import software.amazon.awssdk.core.client.config.ClientOverrideConfiguration;
+import software.amazon.awssdk.core.retry.RetryMode;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
+import software.amazon.awssdk.http.apache.ApacheHttpClient;
 import software.amazon.awssdk.regions.Region;
 import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
 
+import java.time.Duration;
+
 
 
 @Configuration
@@ -24,11 +29,42 @@ public class DynamoDBConfig {
     @Value("${aws.region:eu-central-1}")
     private String region;
 
+    @Value("${renting.dynamodb.max-connections:200}")
+    private int maxConnections;
+
+    @Value("${renting.dynamodb.connection-timeout-ms:1000}")
+    private long connectionTimeoutMs;
+
+    @Value("${renting.dynamodb.socket-timeout-ms:5000}")
+    private long socketTimeoutMs;
+
+    @Value("${renting.dynamodb.api-call-attempt-timeout-ms:3000}")
+    private long apiCallAttemptTimeoutMs;
+
+    @Value("${renting.dynamodb.api-call-timeout-ms:10000}")
+    private long apiCallTimeoutMs;
+
     @Bean
-    public DynamoDbClient dynamoDbClient() {
+    public DynamoDbClient dynamoDbClient(DynamoDbLatencies latencies, HedgedReads hedgedReads) {
         return DynamoDbClient.builder()
                 .credentialsProvider(DefaultCredentialsProvider.create())
                 .region(Region.of(region))
+                // Sized for parallel availability checks plus hedged reads; idle connections are kept warm
+                .httpClientBuilder(ApacheHttpClient.builder()
+                        .maxConnections(maxConnections)
+                        .connectionTimeout(Duration.ofMillis(connectionTimeoutMs))
+                        .connectionAcquisitionTimeout(Duration.ofMillis(connectionTimeoutMs))
+                        .socketTimeout(Duration.ofMillis(socketTimeoutMs))
+                        .connectionMaxIdleTime(Duration.ofSeconds(60))
+                        .tcpKeepAlive(true))
+                .overrideConfiguration(ClientOverrideConfiguration.builder()
+                        // Adaptive retry also rate-limits the client when DynamoDB throttles
+                        .retryPolicy(RetryMode.ADAPTIVE)
+                        .apiCallAttemptTimeout(Duration.ofMillis(apiCallAttemptTimeoutMs))
+                        .apiCallTimeout(Duration.ofMillis(apiCallTimeoutMs))
+                        .addExecutionInterceptor(latencies)
+                        .addExecutionInterceptor(hedgedReads)
+                        .build())
                 .build();
     }
     @Bean
@@ -0,0 +1,86 @@
+package dev.renting.config;
+
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttribute;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+import software.amazon.awssdk.core.interceptor.SdkExecutionAttribute;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Observed latency of every successful DynamoDB request, per operation (GetItem, Query, ...).
+ *
+ * Registered as an interceptor on the DynamoDB client. Each HTTP attempt is timed on its own,
+ * so retries, backoff and the pages of a query do not inflate the samples. Each operation keeps its most recent
+ * {@value #WINDOW} latencies in a ring buffer; percentiles are recomputed from it every
+ * {@value #REFRESH_EVERY} samples, so reading them is just a volatile read.
+ */
+@Component
+public class DynamoDbLatencies implements ExecutionInterceptor {
+
+    private static final int WINDOW = 1024;
+    private static final int REFRESH_EVERY = 64;
+    private static final ExecutionAttribute<Long> START_NANOS = new ExecutionAttribute<>("RentingStartNanos");
+
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    private static final class Window {
+        private final long[] samples = new long[WINDOW];
+        private long count;
+        volatile long p50Nanos = -1;
+        volatile long p95Nanos = -1;
+        volatile long p99Nanos = -1;
+
+        synchronized void record(long nanos) {
+            samples[(int) (count % WINDOW)] = nanos;
+            count++;
+            if (count % REFRESH_EVERY == 0) {
+                long[] sorted = Arrays.copyOf(samples, (int) Math.min(count, WINDOW));
+                Arrays.sort(sorted);
+                p50Nanos = sorted[(int) (sorted.length * 0.50)];
+                p95Nanos = sorted[(int) (sorted.length * 0.95)];
+                p99Nanos = sorted[(int) (sorted.length * 0.99)];
+            }
+        }
+    }
+
+    @Override
+    public void beforeTransmission(Context.BeforeTransmission context, ExecutionAttributes executionAttributes) {
+        executionAttributes.putAttribute(START_NANOS, System.nanoTime());
+    }
+
+    @Override
+    public void afterTransmission(Context.AfterTransmission context, ExecutionAttributes executionAttributes) {
+        Long start = executionAttributes.getAttribute(START_NANOS);
+        String operation = executionAttributes.getAttribute(SdkExecutionAttribute.OPERATION_NAME);
+        // Throttled and failed attempts answer fast and would drag the percentiles down
+        if (start != null && operation != null && context.httpResponse().isSuccessful()) {
+            record(operation, System.nanoTime() - start);
+        }
+    }
+
+    public void record(String operation, long nanos) {
+        windows.computeIfAbsent(operation, o -> new Window()).record(nanos);
+    }
+
+    /**
+     * Returns the given percentile (50, 95 or 99) of the operation in nanoseconds, or -1 while
+     * fewer than {@value #REFRESH_EVERY} calls have been observed.
+     */
+    public long percentileNanos(String operation, int percentile) {
+        Window window = windows.get(operation);
+        if (window == null) {
+            return -1;
+        }
+        return switch (percentile) {
+            case 50 -> window.p50Nanos;
+            case 95 -> window.p95Nanos;
+            case 99 -> window.p99Nanos;
+            default -> throw new IllegalArgumentException("Unsupported percentile: " + percentile);
+        };
+    }
+}
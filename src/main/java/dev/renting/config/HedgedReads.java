@@ -0,0 +1,221 @@
+package dev.renting.config;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.awscore.AwsRequest;
+import software.amazon.awssdk.core.SdkRequest;
+import software.amazon.awssdk.core.exception.ApiCallAttemptTimeoutException;
+import software.amazon.awssdk.core.exception.ApiCallTimeoutException;
+import software.amazon.awssdk.core.interceptor.Context;
+import software.amazon.awssdk.core.interceptor.ExecutionAttributes;
+import software.amazon.awssdk.core.interceptor.ExecutionInterceptor;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Runs idempotent DynamoDB reads with a hedge and an adaptive attempt timeout, to cut the
+ * tail latency that single slow calls add to availability searches.
+ *
+ * The read is sent once; if it has not answered after the operation's observed p95, an
+ * identical read is sent and whichever answers first is used (the other is interrupted).
+ * Hedges are limited to {@code renting.dynamodb.hedge-budget-percent} of reads so a slow
+ * table is not hit with twice the load. Each HTTP attempt of the read is cut off after four
+ * times the observed p99, kept between {@code renting.dynamodb.read-timeout-floor-ms} and the
+ * client's attempt timeout, and retried by the SDK; the read as a whole is only bounded by the
+ * client's {@code api-call-timeout-ms}, so throttled retries and multi-page queries still
+ * complete. Registered as an interceptor on the DynamoDB client to apply that timeout.
+ * Must only be used for reads: both copies may reach DynamoDB.
+ */
+@Component
+public class HedgedReads implements ExecutionInterceptor {
+
+    // Budget tokens are hundredths of a hedge; at most this many hedges can be saved up
+    private static final long MAX_SAVED_HEDGES = 10;
+
+    private final DynamoDbLatencies latencies;
+    private final long initialHedgeDelayNanos;
+    private final long minHedgeDelayNanos;
+    private final long readTimeoutFloorNanos;
+    private final long readTimeoutCeilingNanos;
+    private final int hedgeBudgetPercent;
+
+    // Attempt timeout of the read running on this thread, picked up by modifyRequest
+    private static final ThreadLocal<Duration> ATTEMPT_TIMEOUT = new ThreadLocal<>();
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicLong hedgeBudget = new AtomicLong(MAX_SAVED_HEDGES * 100);
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private long readsAtLastReport;
+
+    @Autowired
+    public HedgedReads(DynamoDbLatencies latencies,
+                       @Value("${renting.dynamodb.hedge-initial-delay-ms:100}") long initialHedgeDelayMs,
+                       @Value("${renting.dynamodb.hedge-min-delay-ms:5}") long minHedgeDelayMs,
+                       @Value("${renting.dynamodb.hedge-budget-percent:10}") int hedgeBudgetPercent,
+                       @Value("${renting.dynamodb.read-timeout-floor-ms:300}") long readTimeoutFloorMs,
+                       @Value("${renting.dynamodb.api-call-attempt-timeout-ms:3000}") long attemptTimeoutMs) {
+        this.latencies = latencies;
+        this.initialHedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(initialHedgeDelayMs);
+        this.minHedgeDelayNanos = TimeUnit.MILLISECONDS.toNanos(minHedgeDelayMs);
+        this.hedgeBudgetPercent = hedgeBudgetPercent;
+        this.readTimeoutFloorNanos = TimeUnit.MILLISECONDS.toNanos(readTimeoutFloorMs);
+        this.readTimeoutCeilingNanos = TimeUnit.MILLISECONDS.toNanos(attemptTimeoutMs);
+    }
+
+    /**
+     * Runs the read, hedging it if it is slow.
+     *
+     * @param operation The DynamoDB operation the read performs (GetItem, Query), whose latencies drive the timings.
+     */
+    public <T> T read(String operation, Supplier<T> call) {
+        reads.increment();
+        hedgeBudget.accumulateAndGet(hedgeBudgetPercent, (budget, add) -> Math.min(budget + add, MAX_SAVED_HEDGES * 100));
+        Duration attemptTimeout = Duration.ofNanos(attemptTimeoutNanos(operation));
+        ExecutorCompletionService<T> completion = new ExecutorCompletionService<>(executor);
+        Future<T> primary = completion.submit(() -> withAttemptTimeout(attemptTimeout, call));
+        Future<T> hedge = null;
+        try {
+            Future<T> done = completion.poll(hedgeDelayNanos(operation), TimeUnit.NANOSECONDS);
+            if (done == null && takeHedge()) {
+                hedge = completion.submit(() -> withAttemptTimeout(attemptTimeout, call));
+                hedges.increment();
+            }
+            int pending = hedge != null ? 2 : 1;
+            while (true) {
+                if (done == null) {
+                    // The SDK's own timeouts bound each copy, so waiting for one to finish always ends
+                    done = completion.take();
+                }
+                pending--;
+                try {
+                    T value = done.get();
+                    if (done == hedge) {
+                        hedgeWins.increment();
+                    }
+                    return value;
+                } catch (ExecutionException e) {
+                    if (pending == 0) {
+                        if (e.getCause() instanceof ApiCallTimeoutException || e.getCause() instanceof ApiCallAttemptTimeoutException) {
+                            timeouts.increment();
+                        }
+                        if (e.getCause() instanceof RuntimeException runtime) {
+                            throw runtime;
+                        }
+                        throw new IllegalStateException(operation + " failed", e.getCause());
+                    }
+                    done = null; // The other copy may still succeed
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + operation, e);
+        } finally {
+            primary.cancel(true);
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+        }
+    }
+
+    private static <T> T withAttemptTimeout(Duration attemptTimeout, Supplier<T> call) {
+        ATTEMPT_TIMEOUT.set(attemptTimeout);
+        try {
+            return call.get();
+        } finally {
+            ATTEMPT_TIMEOUT.remove();
+        }
+    }
+
+    // Sync client calls run on the calling thread, so every page and retry of a hedged read gets its timeout
+    @Override
+    public SdkRequest modifyRequest(Context.ModifyRequest context, ExecutionAttributes executionAttributes) {
+        Duration attemptTimeout = ATTEMPT_TIMEOUT.get();
+        if (attemptTimeout == null || !(context.request() instanceof AwsRequest request)) {
+            return context.request();
+        }
+        return request.toBuilder()
+                .overrideConfiguration(o -> o.apiCallAttemptTimeout(attemptTimeout))
+                .build();
+    }
+
+    private boolean takeHedge() {
+        long budget;
+        do {
+            budget = hedgeBudget.get();
+            if (budget < 100) {
+                return false;
+            }
+        } while (!hedgeBudget.compareAndSet(budget, budget - 100));
+        return true;
+    }
+
+    private long hedgeDelayNanos(String operation) {
+        long p95 = latencies.percentileNanos(operation, 95);
+        if (p95 < 0) {
+            return initialHedgeDelayNanos;
+        }
+        return Math.min(Math.max(p95, minHedgeDelayNanos), attemptTimeoutNanos(operation) / 2);
+    }
+
+    private long attemptTimeoutNanos(String operation) {
+        long p99 = latencies.percentileNanos(operation, 99);
+        if (p99 < 0) {
+            return readTimeoutCeilingNanos;
+        }
+        return Math.min(Math.max(p99 * 4, readTimeoutFloorNanos), readTimeoutCeilingNanos);
+    }
+
+    public long getReadCount() {
+        return reads.sum();
+    }
+
+    public long getHedgeCount() {
+        return hedges.sum();
+    }
+
+    // Hedges that answered before the original read
+    public long getHedgeWinCount() {
+        return hedgeWins.sum();
+    }
+
+    public long getTimeoutCount() {
+        return timeouts.sum();
+    }
+
+    @Scheduled(fixedDelayString = "${renting.dynamodb.stats-interval-ms:300000}")
+    public void reportStats() {
+        long total = reads.sum();
+        if (total == readsAtLastReport) {
+            return;
+        }
+        readsAtLastReport = total;
+        System.out.println("DEBUG: DynamoDB reads: " + total + ", hedged: " + hedges.sum() + ", hedges won: "
+                + hedgeWins.sum() + ", timed out: " + timeouts.sum()
+                + ", GetItem p95/p99 ms: " + millis("GetItem", 95) + "/" + millis("GetItem", 99)
+                + ", Query p95/p99 ms: " + millis("Query", 95) + "/" + millis("Query", 99));
+    }
+
+    private double millis(String operation, int percentile) {
+        return latencies.percentileNanos(operation, percentile) / 1_000_000.0;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,384 @@
+package dev.renting.config;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Forwards {@link InvalidationEvent}s to the other instances behind the load balancer and
+ * republishes theirs locally, so in-process caches do not serve data another node changed.
+ *
+ * Events are batched for {@code renting.invalidation.batch-ms} into datagrams. Each
+ * datagram carries the sender's random instance id and a sequence number, and idle
+ * senders send a heartbeat with their last sequence number every
+ * {@code renting.invalidation.heartbeat-ms}. A receiver that sees a sequence number jump
+ * (a datagram was lost) publishes an {@link InvalidationResyncEvent} instead of
+ * applying the batch, and caches rebuild from the tables. The transport is chosen with
+ * {@code renting.invalidation.transport}: none (single instance, the default),
+ * multicast or peers, see {@link UdpInvalidationTransport}.
+ *
+ * Every datagram ends with an HMAC-SHA256 (first {@value #MAC_BYTES} bytes) over its content,
+ * keyed with {@code renting.invalidation.secret}, which all instances share and which is
+ * required when a transport is enabled. Datagrams that fail the check are dropped, so only
+ * instances that know the secret can inject events or trigger resyncs.
+ */
+@Component
+public class InvalidationBus {
+
+    private static final int MAGIC = 0x494E564C; // "INVL"
+    private static final byte VERSION = 2;
+    private static final byte FLAG_HEARTBEAT = 1;
+    private static final byte FLAG_RESYNC = 2;
+    // magic, version, flags, instance id, sequence, event count
+    private static final int HEADER_BYTES = 4 + 1 + 1 + 8 + 8 + 2;
+    private static final int MAC_BYTES = 16;
+    // Room left for events in a datagram
+    private static final int MAX_PAYLOAD_BYTES = InvalidationTransport.MAX_DATAGRAM_BYTES - MAC_BYTES;
+    private static final long PEER_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final ApplicationEventPublisher eventPublisher;
+    private final String transportType;
+    private final int port;
+    private final String group;
+    private final String interfaceName;
+    private final int ttl;
+    private final String peerList;
+    private final String bindAddress;
+    private final SecretKeySpec macKey;
+    private final long batchNanos;
+    private final long heartbeatMs;
+
+    private final long instanceId = new SecureRandom().nextLong();
+    private final BlockingQueue<InvalidationEvent> outbox = new ArrayBlockingQueue<>(10_000);
+    // Set when events could not be sent, so peers are told to resync
+    private final AtomicBoolean lostOutgoing = new AtomicBoolean();
+    private final Map<Long, Peer> peers = new ConcurrentHashMap<>();
+    private final LongAdder sentEvents = new LongAdder();
+    private final LongAdder receivedEvents = new LongAdder();
+    private final LongAdder resyncs = new LongAdder();
+    private final LongAdder rejectedDatagrams = new LongAdder();
+
+    private volatile InvalidationTransport transport;
+    private volatile Thread sender;
+    private long lastSequence; // Only used by the sender thread
+
+    private static final class Peer {
+        long lastSequence;
+        long lastHeardNanos;
+
+        Peer(long lastSequence) {
+            this.lastSequence = lastSequence;
+        }
+    }
+
+    @Autowired
+    public InvalidationBus(ApplicationEventPublisher eventPublisher,
+                           @Value("${renting.invalidation.transport:none}") String transportType,
+                           @Value("${renting.invalidation.port:7600}") int port,
+                           @Value("${renting.invalidation.group:239.255.76.1}") String group,
+                           @Value("${renting.invalidation.interface:lo}") String interfaceName,
+                           @Value("${renting.invalidation.ttl:1}") int ttl,
+                           @Value("${renting.invalidation.peers:}") String peerList,
+                           @Value("${renting.invalidation.bind-address:127.0.0.1}") String bindAddress,
+                           @Value("${renting.invalidation.secret:}") String secret,
+                           @Value("${renting.invalidation.batch-ms:2}") long batchMs,
+                           @Value("${renting.invalidation.heartbeat-ms:1000}") long heartbeatMs) {
+        this.eventPublisher = eventPublisher;
+        this.transportType = transportType;
+        this.port = port;
+        this.group = group;
+        this.interfaceName = interfaceName;
+        this.ttl = ttl;
+        this.peerList = peerList;
+        this.bindAddress = bindAddress;
+        this.macKey = secret.isEmpty() ? null : new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        this.batchNanos = TimeUnit.MILLISECONDS.toNanos(batchMs);
+        this.heartbeatMs = heartbeatMs;
+    }
+
+    @PostConstruct
+    void start() throws IOException {
+        switch (transportType) {
+            case "none" -> {
+                return;
+            }
+            case "multicast", "peers" -> {
+                if (macKey == null) {
+                    throw new IllegalStateException("renting.invalidation.secret is required for the "
+                            + transportType + " invalidation transport.");
+                }
+            }
+            default -> throw new IllegalStateException("Unknown invalidation transport: " + transportType);
+        }
+        switch (transportType) {
+            case "multicast" -> {
+                NetworkInterface networkInterface = NetworkInterface.getByName(interfaceName);
+                if (networkInterface == null) {
+                    throw new IllegalStateException("Unknown network interface for invalidations: " + interfaceName);
+                }
+                transport = UdpInvalidationTransport.multicast(InetAddress.getByName(group), port, networkInterface, ttl);
+            }
+            case "peers" -> {
+                List<InetSocketAddress> addresses = new ArrayList<>();
+                for (String peer : peerList.split(",")) {
+                    if (!peer.isBlank()) {
+                        int colon = peer.lastIndexOf(':');
+                        addresses.add(new InetSocketAddress(peer.substring(0, colon).trim(),
+                                Integer.parseInt(peer.substring(colon + 1).trim())));
+                    }
+                }
+                transport = UdpInvalidationTransport.peers(InetAddress.getByName(bindAddress), port, addresses);
+            }
+        }
+        transport.start(this::receive);
+        sender = Thread.ofVirtual().name("invalidation-sender").start(this::sendLoop);
+        System.out.println("DEBUG: Invalidation bus started (" + transportType + ", port " + port + ").");
+    }
+
+    @PreDestroy
+    void stop() throws IOException {
+        if (sender != null) {
+            sender.interrupt();
+        }
+        if (transport != null) {
+            transport.close();
+        }
+    }
+
+    @EventListener
+    public void onInvalidation(InvalidationEvent event) {
+        if (transport == null || event.isRemote()) {
+            return;
+        }
+        if (!outbox.offer(event)) {
+            lostOutgoing.set(true);
+        }
+    }
+
+    private void sendLoop() {
+        List<InvalidationEvent> batch = new ArrayList<>();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                InvalidationEvent first = outbox.poll(heartbeatMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    send(datagram(FLAG_HEARTBEAT, lastSequence, List.of()));
+                    continue;
+                }
+                // Give concurrent writes a moment to join the same datagram
+                batch.add(first);
+                long deadline = System.nanoTime() + batchNanos;
+                InvalidationEvent next;
+                while ((next = outbox.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) != null) {
+                    batch.add(next);
+                }
+                sendBatch(batch);
+            } catch (InterruptedException e) {
+                return;
+            } catch (IOException e) {
+                lostOutgoing.set(true);
+                System.err.println("WARNING: Could not send invalidations: " + e.getMessage());
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void sendBatch(List<InvalidationEvent> batch) throws IOException {
+        List<byte[]> encoded = new ArrayList<>();
+        int size = HEADER_BYTES;
+        for (InvalidationEvent event : batch) {
+            byte[] bytes = encode(event);
+            if (HEADER_BYTES + bytes.length > MAX_PAYLOAD_BYTES) {
+                System.err.println("WARNING: Invalidation too large to send, peers will resync: " + event.getKey());
+                lostOutgoing.set(true);
+                continue;
+            }
+            if (size + bytes.length > MAX_PAYLOAD_BYTES) {
+                sendData(encoded);
+                encoded.clear();
+                size = HEADER_BYTES;
+            }
+            encoded.add(bytes);
+            size += bytes.length;
+        }
+        sendData(encoded);
+    }
+
+    private void sendData(List<byte[]> events) throws IOException {
+        byte flags = lostOutgoing.getAndSet(false) ? FLAG_RESYNC : 0;
+        if (events.isEmpty() && flags == 0) {
+            return;
+        }
+        lastSequence++;
+        send(datagram(flags, lastSequence, events));
+        sentEvents.add(events.size());
+    }
+
+    private void send(byte[] datagram) throws IOException {
+        transport.send(datagram);
+    }
+
+    private byte[] datagram(byte flags, long sequence, List<byte[]> events) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(InvalidationTransport.MAX_DATAGRAM_BYTES);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeByte(flags);
+        out.writeLong(instanceId);
+        out.writeLong(sequence);
+        out.writeShort(events.size());
+        for (byte[] event : events) {
+            out.write(event);
+        }
+        out.write(mac(bytes.toByteArray(), bytes.size()));
+        return bytes.toByteArray();
+    }
+
+    // Truncated HMAC of the first length bytes
+    private byte[] mac(byte[] content, int length) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(macKey);
+            mac.update(content, 0, length);
+            return Arrays.copyOf(mac.doFinal(), MAC_BYTES);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    private static byte[] encode(InvalidationEvent event) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(event.getNamespace());
+        out.writeUTF(event.getKey());
+        out.writeByte(event.getValues().size());
+        for (String value : event.getValues()) {
+            out.writeBoolean(value != null);
+            if (value != null) {
+                out.writeUTF(value);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private void receive(byte[] datagram) {
+        int contentLength = datagram.length - MAC_BYTES;
+        if (contentLength < HEADER_BYTES || !MessageDigest.isEqual(mac(datagram, contentLength),
+                Arrays.copyOfRange(datagram, contentLength, datagram.length))) {
+            rejectedDatagrams.increment();
+            return;
+        }
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(datagram, 0, contentLength));
+            if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                return;
+            }
+            byte flags = in.readByte();
+            long sender = in.readLong();
+            long sequence = in.readLong();
+            if (sender == instanceId) {
+                return; // Our own datagram looped back
+            }
+            boolean heartbeat = (flags & FLAG_HEARTBEAT) != 0;
+            // The first datagram heard from an instance is taken as its starting point
+            Peer peer = peers.computeIfAbsent(sender, s -> new Peer(heartbeat ? sequence : sequence - 1));
+            boolean gap;
+            synchronized (peer) {
+                peer.lastHeardNanos = System.nanoTime();
+                long expected = heartbeat ? peer.lastSequence : peer.lastSequence + 1;
+                if (sequence < expected) {
+                    return; // Duplicate or late; a resync already covered it
+                }
+                gap = sequence > expected;
+                peer.lastSequence = sequence;
+            }
+            if (gap || (flags & FLAG_RESYNC) != 0) {
+                // The resync rebuilds from the tables, which already include this batch
+                resyncs.increment();
+                System.err.println("WARNING: Lost invalidations from instance " + Long.toHexString(sender) + ", resyncing.");
+                eventPublisher.publishEvent(new InvalidationResyncEvent(gap ? "sequence gap" : "peer overflow"));
+                return;
+            }
+            int count = in.readUnsignedShort();
+            for (int i = 0; i < count; i++) {
+                String namespace = in.readUTF();
+                String key = in.readUTF();
+                int valueCount = in.readUnsignedByte();
+                List<String> values = new ArrayList<>(valueCount);
+                for (int v = 0; v < valueCount; v++) {
+                    values.add(in.readBoolean() ? in.readUTF() : null);
+                }
+                eventPublisher.publishEvent(new InvalidationEvent(namespace, key, values, true));
+            }
+            receivedEvents.add(count);
+        } catch (IOException e) {
+            System.err.println("WARNING: Malformed invalidation datagram: " + e.getMessage());
+        }
+    }
+
+    // Forgets instances that stopped sending heartbeats (stopped or restarted with a new id)
+    @Scheduled(fixedDelay = 60000)
+    public void evictSilentPeers() {
+        long now = System.nanoTime();
+        peers.values().removeIf(peer -> {
+            synchronized (peer) {
+                return now - peer.lastHeardNanos > PEER_TIMEOUT_NANOS;
+            }
+        });
+    }
+
+    public boolean isEnabled() {
+        return transport != null;
+    }
+
+    public int getPeerCount() {
+        return peers.size();
+    }
+
+    public long getSentEventCount() {
+        return sentEvents.sum();
+    }
+
+    public long getReceivedEventCount() {
+        return receivedEvents.sum();
+    }
+
+    public long getResyncCount() {
+        return resyncs.sum();
+    }
+
+    // Datagrams dropped because their HMAC did not match
+    public long getRejectedDatagramCount() {
+        return rejectedDatagrams.sum();
+    }
+}
@@ -0,0 +1,51 @@
+package dev.renting.config;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A change that makes cached copies of an entity stale, e.g. namespace "car" and the car id.
+ *
+ * Publish it as a Spring event after a write: local listeners see it right away, and the
+ * {@link InvalidationBus} forwards it to the other instances, where it is published again
+ * with {@link #isRemote()} set. Values carry the few fields a peer needs to apply the
+ * change without reading it back (for example the dates of a booking).
+ */
+public class InvalidationEvent {
+
+    private final String namespace;
+    private final String key;
+    private final List<String> values;
+    private final boolean remote;
+
+    public InvalidationEvent(String namespace, String key, String... values) {
+        // Arrays.asList rather than List.of: values may be null
+        this(namespace, key, Collections.unmodifiableList(Arrays.asList(values.clone())), false);
+    }
+
+    InvalidationEvent(String namespace, String key, List<String> values, boolean remote) {
+        this.namespace = namespace;
+        this.key = key;
+        this.values = values;
+        this.remote = remote;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    // May contain nulls
+    public List<String> getValues() {
+        return values;
+    }
+
+    // True when the change was made on another instance
+    public boolean isRemote() {
+        return remote;
+    }
+}
@@ -0,0 +1,19 @@
+package dev.renting.config;
+
+/**
+ * Published when invalidations from another instance may have been lost (a gap in its
+ * sequence numbers, or an overflow on its side). Listeners must drop or rebuild everything
+ * they cache from shared data.
+ */
+public class InvalidationResyncEvent {
+
+    private final String reason;
+
+    public InvalidationResyncEvent(String reason) {
+        this.reason = reason;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+}
@@ -0,0 +1,25 @@
+package dev.renting.config;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Carries {@link InvalidationBus} datagrams between instances. Delivery may be lossy and
+ * unordered; the bus detects lost datagrams by their sequence numbers.
+ */
+public interface InvalidationTransport extends AutoCloseable {
+
+    // Largest datagram the bus may send
+    int MAX_DATAGRAM_BYTES = 1400;
+
+    void send(byte[] datagram) throws IOException;
+
+    /**
+     * Starts delivering received datagrams (including, possibly, the instance's own) to the
+     * receiver on a background thread.
+     */
+    void start(Consumer<byte[]> receiver) throws IOException;
+
+    @Override
+    void close() throws IOException;
+}
@@ -0,0 +1,290 @@
+package dev.renting.config;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Low-overhead delivery of static files (car images, the frontend bundle).
+ *
+ * Files are always sent from disk: classpath resources packed in the jar are extracted once
+ * to a local directory. Large files go through Tomcat's sendfile (or FileChannel.transferTo
+ * when sendfile is not available), so their bytes never enter the heap; small, frequently
+ * requested files are kept memory-mapped in a bounded LRU cache. Single byte-range requests
+ * are answered with 206, and compressible files are sent as their .br/.gz sibling when the
+ * client accepts it.
+ */
+@Component
+public class StaticAssetDelivery {
+
+    // Same threshold as Tomcat's DefaultServlet: below it, an in-memory copy is cheaper than sendfile
+    private static final long SENDFILE_MIN_BYTES = 48 * 1024;
+    private static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    private final Path extractDir;
+    private final long hotCacheMaxBytes;
+    private final long hotCacheMaxEntryBytes;
+
+    private final Map<String, Path> extracted = new ConcurrentHashMap<>();
+    // Access-ordered map used as LRU; guarded by its own monitor
+    private final LinkedHashMap<Path, MappedByteBuffer> hotFiles = new LinkedHashMap<>(64, 0.75f, true);
+    private long hotBytes;
+
+    public StaticAssetDelivery(@Value("${renting.static.extract-dir:data/static-cache}") String extractDir,
+                               @Value("${renting.static.hot-cache-bytes:67108864}") long hotCacheMaxBytes,
+                               @Value("${renting.static.hot-cache-max-entry-bytes:1048576}") long hotCacheMaxEntryBytes) {
+        this.extractDir = Path.of(extractDir);
+        this.hotCacheMaxBytes = hotCacheMaxBytes;
+        this.hotCacheMaxEntryBytes = hotCacheMaxEntryBytes;
+    }
+
+    /**
+     * Returns a file on disk with the content of the resource, extracting it once if the
+     * resource lives inside a jar. {@code key} must change whenever the content does.
+     */
+    public Path materialize(String key, Resource resource) throws IOException {
+        if (resource.isFile()) {
+            return resource.getFile().toPath();
+        }
+        Path cached = extracted.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            return extracted.computeIfAbsent(key, k -> {
+                try {
+                    Path target = extractDir.resolve(k);
+                    if (!Files.exists(target)) {
+                        Files.createDirectories(target.getParent());
+                        Path tmp = Files.createTempFile(target.getParent(), "extract", ".tmp");
+                        try (InputStream in = resource.getInputStream()) {
+                            Files.copy(in, tmp, StandardCopyOption.REPLACE_EXISTING);
+                        }
+                        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                    }
+                    return target;
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        } catch (IllegalStateException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a gzip copy of the file, creating it on first use.
+     */
+    public Path gzipped(String key, Path file) throws IOException {
+        Path target = extractDir.resolve(key + ".gz");
+        if (Files.exists(target)) {
+            return target;
+        }
+        Files.createDirectories(target.getParent());
+        Path tmp = Files.createTempFile(target.getParent(), "gzip", ".tmp");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp))) {
+            Files.copy(file, out);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return target;
+    }
+
+    /**
+     * Sends a file with validators and cache headers, answering conditional and range requests.
+     *
+     * @param contentEncoding "br" or "gzip" when {@code file} is a precompressed copy, otherwise null.
+     */
+    public void serve(HttpServletRequest request, HttpServletResponse response, Path file, String contentType,
+                      String contentEncoding, String etag, String cacheControl) throws IOException {
+        long length = Files.size(file);
+        response.setHeader("ETag", etag);
+        response.setHeader("Cache-Control", cacheControl);
+        if (contentEncoding != null) {
+            response.setHeader("Content-Encoding", contentEncoding);
+        }
+        if (matchesETag(request.getHeader("If-None-Match"), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setContentType(contentType);
+        response.setHeader("Accept-Ranges", "bytes");
+
+        long start = 0;
+        long end = length - 1;
+        String range = request.getHeader("Range");
+        String ifRange = request.getHeader("If-Range");
+        if (range != null && (ifRange == null || ifRange.equals(etag))) {
+            long[] bounds = parseRange(range, length);
+            if (bounds == null) {
+                response.setHeader("Content-Range", "bytes */" + length);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (bounds.length == 2) {
+                start = bounds[0];
+                end = bounds[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+        long count = end - start + 1;
+        response.setContentLengthLong(count);
+        if ("HEAD".equals(request.getMethod()) || count == 0) {
+            return;
+        }
+
+        if (count >= SENDFILE_MIN_BYTES && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+            // Tomcat sends the bytes with sendfile() after the request returns: no copy through the JVM
+            request.setAttribute(SENDFILE_FILENAME, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START, start);
+            request.setAttribute(SENDFILE_END, end + 1);
+            return;
+        }
+
+        WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+        MappedByteBuffer hot = length <= hotCacheMaxEntryBytes ? hotFile(file, length) : null;
+        if (hot != null) {
+            out.write(hot.slice((int) start, (int) count));
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                long sent = channel.transferTo(position, remaining, out);
+                position += sent;
+                remaining -= sent;
+            }
+        }
+    }
+
+    public long getHotCacheBytes() {
+        synchronized (hotFiles) {
+            return hotBytes;
+        }
+    }
+
+    // Mapped buffer of a small file, evicting the least recently used ones beyond the budget
+    private MappedByteBuffer hotFile(Path file, long length) throws IOException {
+        synchronized (hotFiles) {
+            MappedByteBuffer buffer = hotFiles.get(file);
+            if (buffer != null && buffer.capacity() == length) {
+                return buffer;
+            }
+        }
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+        }
+        synchronized (hotFiles) {
+            MappedByteBuffer previous = hotFiles.put(file, buffer);
+            hotBytes += length - (previous != null ? previous.capacity() : 0);
+            Iterator<Map.Entry<Path, MappedByteBuffer>> eldest = hotFiles.entrySet().iterator();
+            while (hotBytes > hotCacheMaxBytes && eldest.hasNext()) {
+                Map.Entry<Path, MappedByteBuffer> entry = eldest.next();
+                if (entry.getKey().equals(file)) {
+                    continue;
+                }
+                hotBytes -= entry.getValue().capacity();
+                eldest.remove();
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Parses a Range header for a single range.
+     * @return {start, end} for a satisfiable single range, an empty array to ignore the
+     *         header (multiple or malformed ranges are answered with the full file), or
+     *         null if the range is not satisfiable.
+     */
+    static long[] parseRange(String header, long length) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) {
+            return new long[0];
+        }
+        String spec = header.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return new long[0];
+        }
+        try {
+            long start;
+            long end;
+            if (dash == 0) {
+                // Suffix range: the last N bytes
+                long suffix = Long.parseLong(spec.substring(1));
+                if (suffix == 0) {
+                    return null;
+                }
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+            } else {
+                start = Long.parseLong(spec.substring(0, dash));
+                end = dash == spec.length() - 1 ? length - 1 : Math.min(Long.parseLong(spec.substring(dash + 1)), length - 1);
+            }
+            if (start >= length || start > end) {
+                return null;
+            }
+            return new long[] {start, end};
+        } catch (NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    // If-None-Match may hold "*" or a comma separated list of (possibly weak) tags
+    static boolean matchesETag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // True if the Accept-Encoding header allows the coding (ignores q-values other than q=0)
+    public static boolean accepts(HttpServletRequest request, String coding) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.trim().split(";");
+            if (tokens[0].trim().equalsIgnoreCase(coding)) {
+                return tokens.length < 2 || !tokens[1].trim().replace(" ", "").matches("q=0(\\.0*)?");
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,116 @@
+package dev.renting.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.regex.Pattern;
+
+/**
+ * Serves the production frontend bundle (/VAADIN/build/*) through {@link StaticAssetDelivery}.
+ *
+ * The bundle file names carry a content hash, so they are cached as immutable. JS, CSS and
+ * other text assets are sent as the Brotli copy produced by the production build when the
+ * client accepts it, otherwise gzip (the build's .gz if present, else one compressed on
+ * first use). In development mode the bundle is not on the classpath and requests pass through.
+ */
+@Component
+public class StaticBundleFilter extends OncePerRequestFilter {
+
+    static final String BUNDLE_PATH = "/VAADIN/build/";
+    private static final String BUNDLE_LOCATION = "META-INF/VAADIN/webapp/VAADIN/build/";
+    private static final String CACHE_CONTROL = "public, max-age=31536000, immutable";
+    private static final Pattern SAFE_NAME = Pattern.compile("[A-Za-z0-9._-]+(/[A-Za-z0-9._-]+)*");
+
+    private final StaticAssetDelivery delivery;
+
+    @Autowired
+    public StaticBundleFilter(StaticAssetDelivery delivery) {
+        this.delivery = delivery;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String method = request.getMethod();
+        return !("GET".equals(method) || "HEAD".equals(method))
+                || !request.getRequestURI().startsWith(request.getContextPath() + BUNDLE_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String name = request.getRequestURI().substring(request.getContextPath().length() + BUNDLE_PATH.length());
+        if (!SAFE_NAME.matcher(name).matches() || name.contains("..")) {
+            chain.doFilter(request, response);
+            return;
+        }
+        Resource resource = new ClassPathResource(BUNDLE_LOCATION + name);
+        if (!resource.isReadable()) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        // The jar's entry time changes with every build, so it keeps extracted copies apart
+        String key = "bundle/" + resource.lastModified() + "/" + name;
+        String contentType = contentTypeOf(name);
+        Path file;
+        String encoding = null;
+        if (isCompressible(name)) {
+            response.setHeader("Vary", "Accept-Encoding");
+            Resource brotli = new ClassPathResource(BUNDLE_LOCATION + name + ".br");
+            Resource gzip = new ClassPathResource(BUNDLE_LOCATION + name + ".gz");
+            if (StaticAssetDelivery.accepts(request, "br") && brotli.isReadable()) {
+                file = delivery.materialize(key + ".br", brotli);
+                encoding = "br";
+            } else if (StaticAssetDelivery.accepts(request, "gzip")) {
+                file = gzip.isReadable()
+                        ? delivery.materialize(key + ".gz", gzip)
+                        : delivery.gzipped(key, delivery.materialize(key, resource));
+                encoding = "gzip";
+            } else {
+                file = delivery.materialize(key, resource);
+            }
+        } else {
+            file = delivery.materialize(key, resource);
+        }
+
+        String etag = "\"" + resource.lastModified() + "-" + name + (encoding != null ? "-" + encoding : "") + "\"";
+        delivery.serve(request, response, file, contentType, encoding, etag, CACHE_CONTROL);
+    }
+
+    private static boolean isCompressible(String name) {
+        return name.endsWith(".js") || name.endsWith(".mjs") || name.endsWith(".css") || name.endsWith(".html")
+                || name.endsWith(".svg") || name.endsWith(".json") || name.endsWith(".map");
+    }
+
+    private static String contentTypeOf(String name) {
+        if (name.endsWith(".js") || name.endsWith(".mjs")) {
+            return "text/javascript;charset=UTF-8";
+        } else if (name.endsWith(".css")) {
+            return "text/css;charset=UTF-8";
+        } else if (name.endsWith(".html")) {
+            return "text/html;charset=UTF-8";
+        } else if (name.endsWith(".svg")) {
+            return "image/svg+xml";
+        } else if (name.endsWith(".json") || name.endsWith(".map")) {
+            return "application/json";
+        } else if (name.endsWith(".woff2")) {
+            return "font/woff2";
+        } else if (name.endsWith(".woff")) {
+            return "font/woff";
+        } else if (name.endsWith(".png")) {
+            return "image/png";
+        } else if (name.endsWith(".webp")) {
+            return "image/webp";
+        }
+        return "application/octet-stream";
+    }
+}
@@ -0,0 +1,59 @@
+package dev.renting.config;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket.
+ *
+ * Implemented as a generic cell rate algorithm: instead of a token count and a refill time,
+ * the bucket stores a single "theoretical arrival time", the instant at which it would be
+ * full again. Taking tokens pushes that instant forward, so a take is one CAS on one long.
+ */
+final class TokenBucket {
+
+    private final long nanosPerToken;
+    private final long burstNanos;
+    private final AtomicLong fullAt;
+
+    /**
+     * @param tokensPerSecond Sustained rate.
+     * @param capacity Tokens available to a burst when the bucket is full.
+     */
+    TokenBucket(double tokensPerSecond, long capacity) {
+        this.nanosPerToken = Math.max(1, (long) (1_000_000_000L / tokensPerSecond));
+        this.burstNanos = capacity * nanosPerToken;
+        this.fullAt = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Takes {@code tokens} if at least {@code reserve} tokens are left afterwards.
+     *
+     * @return 0 if the tokens were taken, otherwise the nanoseconds until they would be available.
+     */
+    long tryTake(long tokens, long reserve) {
+        long cost = tokens * nanosPerToken;
+        long limit = burstNanos - cost - reserve * nanosPerToken;
+        while (true) {
+            long now = System.nanoTime();
+            long current = fullAt.get();
+            long base = Math.max(current, now);
+            long debt = base - now;
+            if (debt > limit) {
+                return debt - limit;
+            }
+            if (fullAt.compareAndSet(current, base + cost)) {
+                return 0;
+            }
+        }
+    }
+
+    // Gives back tokens taken for a request that was rejected further on
+    void refund(long tokens) {
+        fullAt.addAndGet(-tokens * nanosPerToken);
+    }
+
+    // True once the bucket has refilled completely, so it can be dropped and recreated on demand
+    boolean isFull() {
+        return fullAt.get() - System.nanoTime() <= 0;
+    }
+}
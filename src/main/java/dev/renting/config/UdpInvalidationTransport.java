@@ -0,0 +1,118 @@
+package dev.renting.config;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * UDP transport for the {@link InvalidationBus}, in one of two modes:
+ * <ul>
+ *   <li>multicast: every instance joins the same group and port. On a single machine use the
+ *       loopback interface, which keeps the datagrams on the host.</li>
+ *   <li>peers: every instance binds its own port and sends a copy to each configured peer
+ *       (e.g. several JVMs on 127.0.0.1 with different ports).</li>
+ * </ul>
+ * Datagrams are only delivered from trusted sources: addresses on the multicast interface's
+ * subnets, or the configured peers. The bus authenticates the content on top of that.
+ */
+final class UdpInvalidationTransport implements InvalidationTransport {
+
+    private final DatagramChannel channel;
+    private final List<SocketAddress> targets;
+    private final Predicate<InetAddress> trustedSource;
+
+    private UdpInvalidationTransport(DatagramChannel channel, List<SocketAddress> targets,
+                                     Predicate<InetAddress> trustedSource) {
+        this.channel = channel;
+        this.targets = targets;
+        this.trustedSource = trustedSource;
+    }
+
+    static UdpInvalidationTransport multicast(InetAddress group, int port, NetworkInterface networkInterface, int ttl)
+            throws IOException {
+        DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET)
+                // Lets several instances on the same host share the group port
+                .setOption(StandardSocketOptions.SO_REUSEADDR, true)
+                .bind(new InetSocketAddress(port))
+                .setOption(StandardSocketOptions.IP_MULTICAST_IF, networkInterface)
+                .setOption(StandardSocketOptions.IP_MULTICAST_TTL, ttl)
+                .setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+        channel.join(group, networkInterface);
+        List<InterfaceAddress> subnets = List.copyOf(networkInterface.getInterfaceAddresses());
+        return new UdpInvalidationTransport(channel, List.of(new InetSocketAddress(group, port)),
+                source -> subnets.stream().anyMatch(subnet -> inSubnet(source, subnet)));
+    }
+
+    static UdpInvalidationTransport peers(InetAddress bindAddress, int port, List<InetSocketAddress> peers)
+            throws IOException {
+        DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET)
+                .bind(new InetSocketAddress(bindAddress, port));
+        Set<InetAddress> peerAddresses = Set.copyOf(peers.stream().map(InetSocketAddress::getAddress).toList());
+        return new UdpInvalidationTransport(channel, List.copyOf(peers), peerAddresses::contains);
+    }
+
+    private static boolean inSubnet(InetAddress address, InterfaceAddress subnet) {
+        byte[] a = address.getAddress();
+        byte[] b = subnet.getAddress().getAddress();
+        if (a.length != b.length) {
+            return false;
+        }
+        int prefix = subnet.getNetworkPrefixLength();
+        for (int i = 0; i < a.length && prefix > 0; i++, prefix -= 8) {
+            int mask = prefix >= 8 ? 0xFF : (0xFF << (8 - prefix)) & 0xFF;
+            if ((a[i] & mask) != (b[i] & mask)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void send(byte[] datagram) throws IOException {
+        for (SocketAddress target : targets) {
+            channel.send(ByteBuffer.wrap(datagram), target);
+        }
+    }
+
+    @Override
+    public void start(Consumer<byte[]> receiver) {
+        Thread.ofVirtual().name("invalidation-receiver").start(() -> {
+            ByteBuffer buffer = ByteBuffer.allocate(MAX_DATAGRAM_BYTES + 1);
+            while (channel.isOpen()) {
+                try {
+                    buffer.clear();
+                    SocketAddress source = channel.receive(buffer);
+                    // Anything else that can reach the port is ignored without a trace, so it cannot flood the log
+                    if (!(source instanceof InetSocketAddress from) || !trustedSource.test(from.getAddress())) {
+                        continue;
+                    }
+                    buffer.flip();
+                    byte[] datagram = new byte[buffer.remaining()];
+                    buffer.get(datagram);
+                    receiver.accept(datagram);
+                } catch (ClosedChannelException e) {
+                    return;
+                } catch (IOException | RuntimeException e) {
+                    System.err.println("WARNING: Dropping invalidation datagram: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
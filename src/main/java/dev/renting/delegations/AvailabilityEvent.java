@@ -0,0 +1,64 @@
+package dev.renting.delegations;
+
+/**
+ * Delta pushed to availability subscribers: the car became unavailable (a booking was
+ * saved) or was released (a booking was deleted) for the given period.
+ */
+public class AvailabilityEvent {
+    private String carId;
+    private String delegationId;
+    private String startDate;
+    private String endDate;
+    private boolean available;
+
+    // Constructor vacío requerido por Hilla para serializar el objeto
+    public AvailabilityEvent() {}
+
+    public AvailabilityEvent(String carId, String delegationId, String startDate, String endDate, boolean available) {
+        this.carId = carId;
+        this.delegationId = delegationId;
+        this.startDate = startDate;
+        this.endDate = endDate;
+        this.available = available;
+    }
+
+    public String getCarId() {
+        return carId;
+    }
+
+    public void setCarId(String carId) {
+        this.carId = carId;
+    }
+
+    public String getDelegationId() {
+        return delegationId;
+    }
+
+    public void setDelegationId(String delegationId) {
+        this.delegationId = delegationId;
+    }
+
+    public String getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(String startDate) {
+        this.startDate = startDate;
+    }
+
+    public String getEndDate() {
+        return endDate;
+    }
+
+    public void setEndDate(String endDate) {
+        this.endDate = endDate;
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    public void setAvailable(boolean available) {
+        this.available = available;
+    }
+}
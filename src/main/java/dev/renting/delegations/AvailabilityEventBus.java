@@ -0,0 +1,104 @@
+package dev.renting.delegations;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pushes availability deltas to clients subscribed to a (delegation, date window).
+ *
+ * There is one multicast sink per delegation with at least one subscriber, so a booking
+ * change is only offered to the subscribers of its own delegation. Each subscriber then
+ * keeps the events overlapping its window, coalesces bursts per car and buffers a bounded
+ * number of events, dropping the oldest ones if the client cannot keep up.
+ */
+@Component
+public class AvailabilityEventBus {
+
+    private static final Duration COALESCE_WINDOW = Duration.ofMillis(200);
+    private static final int COALESCE_MAX_EVENTS = 256;
+    private static final int SUBSCRIBER_BUFFER = 1024;
+
+    private final Map<String, Channel> channels = new ConcurrentHashMap<>();
+
+    // Sink of one delegation and the number of clients listening to it
+    private static class Channel {
+        final Sinks.Many<AvailabilityEvent> sink = Sinks.many().multicast().directBestEffort();
+        volatile int subscribers;
+    }
+
+    /**
+     * Returns the stream of availability changes for cars of the delegation whose
+     * booking overlaps the given period.
+     */
+    public Flux<AvailabilityEvent> subscribe(String delegationId, LocalDate startDate, LocalDate endDate) {
+        return Flux.defer(() -> {
+                    Channel channel = channels.compute(delegationId, (id, existing) -> {
+                        Channel current = existing != null ? existing : new Channel();
+                        current.subscribers++;
+                        return current;
+                    });
+                    return channel.sink.asFlux();
+                })
+                .filter(event -> overlaps(event, startDate, endDate))
+                .bufferTimeout(COALESCE_MAX_EVENTS, COALESCE_WINDOW)
+                .flatMapIterable(AvailabilityEventBus::coalesce)
+                .onBackpressureBuffer(SUBSCRIBER_BUFFER, dropped -> { }, BufferOverflowStrategy.DROP_OLDEST)
+                .doFinally(signal -> channels.computeIfPresent(delegationId, (id, channel) ->
+                        --channel.subscribers == 0 ? null : channel));
+    }
+
+    public int getSubscriberCount() {
+        return channels.values().stream().mapToInt(channel -> channel.subscribers).sum();
+    }
+
+    @EventListener
+    public void onBookingChanged(BookingChangedEvent event) {
+        Booking booking = event.getBooking();
+        if (booking.getDelegationId() == null) {
+            return;
+        }
+        Channel channel = channels.get(booking.getDelegationId());
+        if (channel == null) {
+            return; // Nobody is watching this delegation
+        }
+        AvailabilityEvent availabilityEvent = new AvailabilityEvent(
+                booking.getCarId(),
+                booking.getDelegationId(),
+                booking.getStartDate(),
+                booking.getEndDate(),
+                event.getType() == BookingChangedEvent.Type.DELETED);
+        // Several request threads may emit at once; retry briefly instead of failing the booking
+        channel.sink.emitNext(availabilityEvent, Sinks.EmitFailureHandler.busyLooping(Duration.ofMillis(50)));
+    }
+
+    private static boolean overlaps(AvailabilityEvent event, LocalDate startDate, LocalDate endDate) {
+        if (event.getStartDate() == null || event.getEndDate() == null) {
+            return true;
+        }
+        return !LocalDate.parse(event.getStartDate()).isAfter(endDate)
+                && !LocalDate.parse(event.getEndDate()).isBefore(startDate);
+    }
+
+    // Keeps only the last event per car, preserving the order in which cars changed
+    private static List<AvailabilityEvent> coalesce(List<AvailabilityEvent> burst) {
+        if (burst.size() <= 1) {
+            return burst;
+        }
+        Map<String, AvailabilityEvent> lastByCar = new LinkedHashMap<>();
+        for (AvailabilityEvent event : burst) {
+            lastByCar.remove(event.getCarId());
+            lastByCar.put(event.getCarId(), event);
+        }
+        return List.copyOf(lastByCar.values());
+    }
+}
@@ -0,0 +1,163 @@
+package dev.renting.delegations;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+
+/**
+ * Availability checks shared by the single-delegation search and the
+ * radius search over several delegations.
+ */
+@Service
+public class AvailabilityService {
+
+    private static final double EARTH_RADIUS_KM = 6371.0;
+    // Maximum number of booking queries in flight for one radius search
+    private static final int MAX_CONCURRENT_CHECKS = 32;
+
+    private final DelegationRepository delegationRepository;
+    private final ReservationHoldService reservationHoldService;
+    private final BookedCarFilter bookedCarFilter;
+
+    @Autowired
+    public AvailabilityService(DelegationRepository delegationRepository, ReservationHoldService reservationHoldService,
+                               BookedCarFilter bookedCarFilter) {
+        this.delegationRepository = delegationRepository;
+        this.reservationHoldService = reservationHoldService;
+        this.bookedCarFilter = bookedCarFilter;
+    }
+
+    /**
+     * Checks the active holds and the Bookings table for anything overlapping the given period.
+     * The Bookings query is skipped when the {@link BookedCarFilter} rules out any booking.
+     * @param carId The unique car id (the car's operation value).
+     * @return true if no hold or booking overlaps the period.
+     */
+    public boolean isCarAvailable(String carId, LocalDate queryStartDate, LocalDate queryEndDate) {
+        // Holds are in memory, so check them before going to DynamoDB
+        if (reservationHoldService.isHeld(carId, queryStartDate, queryEndDate)) {
+            return false;
+        }
+        // Most cars have no booking in the period at all, and the filter proves it without a query
+        if (!bookedCarFilter.mightHaveBooking(carId, queryStartDate, queryEndDate)) {
+            return true;
+        }
+        List<Booking> bookingsForCar = delegationRepository.listByPartitionKey(carId, Booking.class);
+        for (Booking booking : bookingsForCar) {
+            if (booking.overlapsWith(queryStartDate, queryEndDate)) {
+                return false;
+            }
+        }
+        bookedCarFilter.recordQueriedButFree();
+        return true;
+    }
+
+    /**
+     * Finds available cars in every delegation within the radius, nearest and cheapest first.
+     *
+     * The car lists of all delegations in range are loaded in parallel, then each candidate
+     * gets its own availability check on a virtual thread. Candidates are ranked before the
+     * checks start, so results are consumed in rank order and the search stops as soon as
+     * {@code limit} cars are confirmed free: no pending candidate can rank higher than those.
+     *
+     * @return At most {@code limit} available cars ordered by distance and then price.
+     */
+    public List<NearbyCar> findAvailableCarsNearby(double lat, double lon, double radiusKm,
+                                                   LocalDate queryStartDate, LocalDate queryEndDate,
+                                                   boolean isVintageMode, int limit) {
+        // 1. Delegations inside the radius
+        List<NearbyCar> delegationsInRange = new ArrayList<>();
+        for (Delegation delegation : delegationRepository.listAllDelegations()) {
+            if (delegation.getDelegationId() == null) {
+                continue;
+            }
+            double distance = distanceKm(lat, lon, delegation.getLat(), delegation.getLongVal());
+            if (distance <= radiusKm) {
+                delegationsInRange.add(new NearbyCar(null, delegation, distance));
+            }
+        }
+        if (delegationsInRange.isEmpty()) {
+            return List.of();
+        }
+
+        ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            // 2. Load the cars of each delegation in parallel
+            List<Future<List<Car>>> carLists = new ArrayList<>();
+            for (NearbyCar entry : delegationsInRange) {
+                String delegationId = entry.getDelegation().getDelegationId();
+                carLists.add(executor.submit(() -> listCarsOfDelegation(delegationId)));
+            }
+            List<NearbyCar> candidates = new ArrayList<>();
+            for (int i = 0; i < delegationsInRange.size(); i++) {
+                NearbyCar entry = delegationsInRange.get(i);
+                for (Car car : carLists.get(i).get()) {
+                    if (isVintageMode == (car.getYear() < 2000)) {
+                        candidates.add(new NearbyCar(car, entry.getDelegation(), entry.getDistanceKm()));
+                    }
+                }
+            }
+            candidates.sort(Comparator.comparingDouble(NearbyCar::getDistanceKm)
+                    .thenComparingInt(candidate -> candidate.getCar().getPrice()));
+
+            // 3. Check every candidate in parallel, bounded so we do not flood DynamoDB
+            Semaphore inFlight = new Semaphore(MAX_CONCURRENT_CHECKS, true);
+            List<Future<Boolean>> checks = new ArrayList<>(candidates.size());
+            for (NearbyCar candidate : candidates) {
+                String carId = candidate.getCar().getOperation();
+                checks.add(executor.submit(() -> {
+                    inFlight.acquire();
+                    try {
+                        return isCarAvailable(carId, queryStartDate, queryEndDate);
+                    } finally {
+                        inFlight.release();
+                    }
+                }));
+            }
+
+            // 4. Consume in rank order and stop once we have enough cars
+            List<NearbyCar> result = new ArrayList<>(Math.min(limit, candidates.size()));
+            for (int i = 0; i < checks.size() && result.size() < limit; i++) {
+                if (checks.get(i).get()) {
+                    result.add(candidates.get(i));
+                }
+            }
+            return result;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Nearby availability search interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Nearby availability search failed", e.getCause());
+        } finally {
+            // Cancels the checks that are no longer needed
+            executor.shutdownNow();
+        }
+    }
+
+    // Cars of one delegation; the profile item shares the partition key, so keep only car items
+    private List<Car> listCarsOfDelegation(String delegationId) {
+        return delegationRepository.listByPartitionKey(delegationId, Car.class).stream()
+                .filter(car -> car.getOperation() != null && car.getOperation().startsWith("car"))
+                .collect(Collectors.toList());
+    }
+
+    // Haversine distance between two coordinates in kilometres
+    static double distanceKm(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return 2 * EARTH_RADIUS_KM * Math.asin(Math.sqrt(a));
+    }
+}
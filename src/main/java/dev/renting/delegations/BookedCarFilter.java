@@ -0,0 +1,397 @@
+package dev.renting.delegations;
+
+import dev.renting.config.InvalidationBus;
+import dev.renting.config.InvalidationResyncEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Tells the availability search which cars certainly have no booking in a period, so it
+ * can skip their Bookings query.
+ *
+ * There is one Bloom filter per calendar month over the ids of the cars with a booking
+ * touching that month; a month without a filter has no bookings at all. A car whose
+ * filters for every month of the period say "absent" has no overlapping booking. Filters
+ * only give false positives, which cost the query the search made before.
+ *
+ * Saves add the car to its months. Bloom filters cannot remove, so deletes leave stale
+ * bits behind until the filters are rebuilt from a scan of Bookings: on startup, on a
+ * cluster resync, every night, and once deletes reach a tenth of the adds since the last
+ * rebuild. Until the first rebuild finishes, every car is reported as possibly booked.
+ *
+ * Saves made on other instances only reach the filters through the {@link InvalidationBus}.
+ * Without it the filters are only trusted for {@code renting.booking-filter.max-age-without-bus-ms}
+ * after the scan they were built from (0, the default, never trusts them), then rebuilt.
+ */
+@Component
+public class BookedCarFilter {
+
+    // Adds this recent are replayed into a rebuilt filter, in case the scan did not see them yet
+    private static final long RECENT_ADDS_NANOS = TimeUnit.SECONDS.toNanos(60);
+    // Bookings longer than this are not indexed; their cars are always looked up
+    private static final int MAX_BOOKING_MONTHS = 120;
+    // Wait before retrying a failed background rebuild, doubled on every further failure
+    private static final long MIN_RETRY_MS = TimeUnit.MINUTES.toMillis(1);
+    private static final long MAX_RETRY_MS = TimeUnit.MINUTES.toMillis(30);
+
+    private final DelegationRepository delegationRepository;
+    private final int bitsPerMonth;
+    private final int hashes;
+    private final InvalidationBus invalidationBus;
+    private final long maxAgeWithoutBusMs;
+
+    private volatile Map<Integer, MonthFilter> filtersByMonth;  // null until the first rebuild
+    private volatile Set<String> alwaysLookUp = ConcurrentHashMap.newKeySet();
+    // When the scan behind the current filters started
+    private volatile long builtAtMillis;
+    // Adds take the read lock, so they never contend with each other; a rebuild swap takes the write lock
+    private final ReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private final Deque<RecentAdd> recentAdds = new ArrayDeque<>();
+    // Set while a background rebuild runs, so lookups and events do not start more scans
+    private final AtomicBoolean rebuildPending = new AtomicBoolean();
+    private volatile long retryAfterMillis;
+    private long retryMs = MIN_RETRY_MS; // Only used by the rebuild, which is synchronized
+
+    private final LongAdder addsSinceRebuild = new LongAdder();
+    private final LongAdder deletesSinceRebuild = new LongAdder();
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder lookupsAvoided = new LongAdder();
+    // Cars the filters let through whose Bookings query found nothing overlapping
+    private final LongAdder queriedButFree = new LongAdder();
+    private long lookupsAtLastReport;
+
+    private record RecentAdd(long nanos, String carId, LocalDate startDate, LocalDate endDate) {}
+
+    // Bloom filter over car ids; bits are atomic so lookups need no lock
+    private static final class MonthFilter {
+        final AtomicLongArray bits;
+        final int bitCount;
+
+        MonthFilter(int bitCount) {
+            this.bitCount = bitCount;
+            this.bits = new AtomicLongArray((bitCount + 63) >>> 6);
+        }
+
+        void add(long hash1, long hash2, int hashes) {
+            for (int i = 0; i < hashes; i++) {
+                int bit = bitIndex(hash1, hash2, i);
+                long mask = 1L << bit;
+                int word = bit >>> 6;
+                long current;
+                while (((current = bits.get(word)) & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                    // Another bit of the same word was set concurrently; retry
+                }
+            }
+        }
+
+        boolean mightContain(long hash1, long hash2, int hashes) {
+            for (int i = 0; i < hashes; i++) {
+                int bit = bitIndex(hash1, hash2, i);
+                if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int bitIndex(long hash1, long hash2, int i) {
+            return (int) Math.floorMod(hash1 + i * hash2, (long) bitCount);
+        }
+
+        int setBits() {
+            int set = 0;
+            for (int i = 0; i < bits.length(); i++) {
+                set += Long.bitCount(bits.get(i));
+            }
+            return set;
+        }
+    }
+
+    @Autowired
+    public BookedCarFilter(DelegationRepository delegationRepository,
+                           @Value("${renting.booking-filter.expected-cars-per-month:10000}") int expectedCarsPerMonth,
+                           @Value("${renting.booking-filter.false-positive-rate:0.01}") double falsePositiveRate,
+                           InvalidationBus invalidationBus,
+                           @Value("${renting.booking-filter.max-age-without-bus-ms:0}") long maxAgeWithoutBusMs) {
+        this.delegationRepository = delegationRepository;
+        this.invalidationBus = invalidationBus;
+        this.maxAgeWithoutBusMs = maxAgeWithoutBusMs;
+        // Standard Bloom sizing: m = -n ln p / (ln 2)^2 bits and k = m/n ln 2 hashes
+        double bits = -expectedCarsPerMonth * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        this.bitsPerMonth = (int) Math.max(64, Math.ceil(bits));
+        this.hashes = (int) Math.max(1, Math.round(bitsPerMonth / (double) expectedCarsPerMonth * Math.log(2)));
+    }
+
+    /**
+     * @return false only if the car certainly has no booking overlapping the period.
+     */
+    public boolean mightHaveBooking(String carId, LocalDate startDate, LocalDate endDate) {
+        lookups.increment();
+        Map<Integer, MonthFilter> filters = filtersByMonth;
+        if (filters == null || alwaysLookUp.contains(carId) || isOutdated()) {
+            return true;
+        }
+        long hash1 = hash(carId);
+        long hash2 = mix(hash1) | 1;
+        int lastMonth = monthIndex(endDate);
+        for (int month = monthIndex(startDate); month <= lastMonth; month++) {
+            MonthFilter filter = filters.get(month);
+            if (filter != null && filter.mightContain(hash1, hash2, hashes)) {
+                return true;
+            }
+        }
+        lookupsAvoided.increment();
+        return false;
+    }
+
+    // Without the bus the filters miss other instances' saves, so they go out of date with age
+    private boolean isOutdated() {
+        if (invalidationBus.isEnabled() || System.currentTimeMillis() - builtAtMillis <= maxAgeWithoutBusMs) {
+            return false;
+        }
+        if (isUsable()) {
+            rebuildAsync();
+        }
+        return true;
+    }
+
+    private boolean isUsable() {
+        return invalidationBus.isEnabled() || maxAgeWithoutBusMs > 0;
+    }
+
+    // Called by the availability check when the filters let a car through and it turned out to be free
+    void recordQueriedButFree() {
+        queriedButFree.increment();
+    }
+
+    @EventListener
+    public void onBookingChanged(BookingChangedEvent event) {
+        Booking booking = event.getBooking();
+        if (event.getType() == BookingChangedEvent.Type.SAVED) {
+            add(booking);
+            return;
+        }
+        deletesSinceRebuild.increment();
+        // Stale bits only cost queries, so rebuild once they are a noticeable share
+        if (deletesSinceRebuild.sum() * 10 >= Math.max(100, addsSinceRebuild.sum())) {
+            rebuildAsync();
+        }
+    }
+
+    private void add(Booking booking) {
+        if (booking.getCarId() == null) {
+            return;
+        }
+        LocalDate startDate;
+        LocalDate endDate;
+        try {
+            startDate = LocalDate.parse(booking.getStartDate());
+            endDate = LocalDate.parse(booking.getEndDate());
+        } catch (DateTimeParseException | NullPointerException e) {
+            alwaysLookUp.add(booking.getCarId());
+            return;
+        }
+        swapLock.readLock().lock();
+        try {
+            addTo(filtersByMonth, alwaysLookUp, booking.getCarId(), startDate, endDate);
+            addsSinceRebuild.increment();
+            synchronized (recentAdds) {
+                long now = System.nanoTime();
+                recentAdds.addLast(new RecentAdd(now, booking.getCarId(), startDate, endDate));
+                while (now - recentAdds.peekFirst().nanos() > RECENT_ADDS_NANOS) {
+                    recentAdds.removeFirst();
+                }
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    private void addTo(Map<Integer, MonthFilter> filters, Set<String> always, String carId,
+                       LocalDate startDate, LocalDate endDate) {
+        if (filters == null) {
+            return; // Not built yet; the first rebuild will include it
+        }
+        int firstMonth = monthIndex(startDate);
+        int lastMonth = monthIndex(endDate);
+        if (lastMonth - firstMonth >= MAX_BOOKING_MONTHS) {
+            always.add(carId);
+            return;
+        }
+        long hash1 = hash(carId);
+        long hash2 = mix(hash1) | 1;
+        for (int month = firstMonth; month <= lastMonth; month++) {
+            filters.computeIfAbsent(month, m -> new MonthFilter(bitsPerMonth)).add(hash1, hash2, hashes);
+        }
+    }
+
+    // Bookings of other instances were lost, so the filters may be missing cars
+    @EventListener
+    public void onResync(InvalidationResyncEvent event) {
+        rebuildAsync();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildOnStartup() {
+        if (!isUsable()) {
+            System.out.println("DEBUG: Booked car filter disabled: no invalidation bus and no max-age-without-bus-ms.");
+            return;
+        }
+        rebuildAsync();
+    }
+
+    private void rebuildAsync() {
+        if (System.currentTimeMillis() < retryAfterMillis) {
+            return; // The last rebuild failed; the filters stay as they are until the retry
+        }
+        if (rebuildPending.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("booked-car-filter-rebuild").start(() -> {
+                try {
+                    rebuild();
+                } finally {
+                    rebuildPending.set(false);
+                }
+            });
+        }
+    }
+
+    /**
+     * Builds new filters from a scan of Bookings and replaces the current ones. Saves made
+     * while scanning, or shortly before, are replayed into the new filters before the swap.
+     */
+    @Scheduled(cron = "${renting.booking-filter.rebuild-cron:0 20 0 * * *}")
+    public synchronized void rebuild() {
+        if (!isUsable()) {
+            return;
+        }
+        long startNanos = System.nanoTime();
+        long startMillis = System.currentTimeMillis();
+        Map<Integer, MonthFilter> filters = new ConcurrentHashMap<>();
+        Set<String> always = ConcurrentHashMap.newKeySet();
+        long adds = 0;
+        try {
+            for (Booking booking : delegationRepository.listAllItems(Booking.class)) {
+                if (booking.getCarId() == null) {
+                    continue;
+                }
+                try {
+                    addTo(filters, always, booking.getCarId(), LocalDate.parse(booking.getStartDate()),
+                            LocalDate.parse(booking.getEndDate()));
+                    adds++;
+                } catch (DateTimeParseException | NullPointerException e) {
+                    always.add(booking.getCarId());
+                }
+            }
+        } catch (RuntimeException e) {
+            retryAfterMillis = System.currentTimeMillis() + retryMs;
+            System.err.println("ERROR: Booked car filter rebuild failed, retrying in " + retryMs / 1000 + " s: " + e.getMessage());
+            retryMs = Math.min(retryMs * 2, MAX_RETRY_MS);
+            return;
+        }
+        retryAfterMillis = 0;
+        retryMs = MIN_RETRY_MS;
+        swapLock.writeLock().lock();
+        try {
+            synchronized (recentAdds) {
+                for (RecentAdd recent : recentAdds) {
+                    if (recent.nanos() - startNanos > -RECENT_ADDS_NANOS) {
+                        addTo(filters, always, recent.carId(), recent.startDate(), recent.endDate());
+                    }
+                }
+            }
+            filtersByMonth = filters;
+            alwaysLookUp = always;
+            builtAtMillis = startMillis;
+            addsSinceRebuild.reset();
+            addsSinceRebuild.add(adds);
+            deletesSinceRebuild.reset();
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+        System.out.println("DEBUG: Booked car filter rebuilt: " + filters.size() + " months, " + adds + " bookings, "
+                + getSizeBytes() + " bytes.");
+    }
+
+    public long getSizeBytes() {
+        Map<Integer, MonthFilter> filters = filtersByMonth;
+        return filters == null ? 0 : (long) filters.size() * ((bitsPerMonth + 63) / 64) * 8;
+    }
+
+    // Expected false-positive rate of the fullest month, from the share of bits set: (set / m)^k
+    public double getEstimatedFalsePositiveRate() {
+        Map<Integer, MonthFilter> filters = filtersByMonth;
+        if (filters == null) {
+            return 1.0;
+        }
+        double worst = 0;
+        for (MonthFilter filter : filters.values()) {
+            worst = Math.max(worst, Math.pow(filter.setBits() / (double) filter.bitCount, hashes));
+        }
+        return worst;
+    }
+
+    public long getLookupCount() {
+        return lookups.sum();
+    }
+
+    public long getLookupsAvoidedCount() {
+        return lookupsAvoided.sum();
+    }
+
+    public long getQueriedButFreeCount() {
+        return queriedButFree.sum();
+    }
+
+    @Scheduled(fixedDelayString = "${renting.booking-filter.stats-interval-ms:300000}")
+    public void reportStats() {
+        long total = lookups.sum();
+        if (total == lookupsAtLastReport) {
+            return;
+        }
+        lookupsAtLastReport = total;
+        Map<Integer, MonthFilter> filters = filtersByMonth;
+        System.out.println(String.format("DEBUG: Booked car filter: %d months, %d bytes, estimated false positives %.4f; "
+                        + "%d lookups, %d avoided, %d queried but free.",
+                filters == null ? 0 : filters.size(), getSizeBytes(), getEstimatedFalsePositiveRate(),
+                total, lookupsAvoided.sum(), queriedButFree.sum()));
+    }
+
+    private static int monthIndex(LocalDate date) {
+        return date.getYear() * 12 + date.getMonthValue() - 1;
+    }
+
+    // 64-bit FNV-1a over the characters, then mixed so both halves are usable
+    private static long hash(String carId) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < carId.length(); i++) {
+            hash ^= carId.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    // Finalizer of SplitMix64
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -3,12 +3,18 @@ package dev.renting.delegations; // Asegúrate de que el paquete sea el correcto
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbAttribute;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondaryPartitionKey;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSecondarySortKey;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortKey;
 
 import java.time.LocalDate; // Para manejar fechas
 
 @DynamoDbBean
 public class Booking {
+    // Índices secundarios globales de la tabla Bookings (ver README)
+    public static final String USER_INDEX = "userId-index";
+    public static final String DELEGATION_INDEX = "delegationId-index";
+
     private String carId;       // Partition Key: ID del coche reservado
     private String startDate;   // Sort Key: Fecha de inicio de la reserva (formato YYYY-MM-DD)
     private String endDate;     // Fecha de fin de la reserva (formato YYYY-MM-DD)
@@ -30,6 +36,7 @@ public class Booking {
     }
 
     @DynamoDbSortKey
+    @DynamoDbSecondarySortKey(indexNames = {USER_INDEX, DELEGATION_INDEX})
     public String getStartDate() {
         return startDate;
     }
@@ -47,6 +54,7 @@ public class Booking {
         this.endDate = endDate;
     }
 
+    @DynamoDbSecondaryPartitionKey(indexNames = USER_INDEX)
     @DynamoDbAttribute("userId")
     public String getUserId() {
         return userId;
@@ -56,6 +64,7 @@ public class Booking {
         this.userId = userId;
     }
 
+    @DynamoDbSecondaryPartitionKey(indexNames = DELEGATION_INDEX)
     @DynamoDbAttribute("delegationId")
     public String getDelegationId() {
         return delegationId;
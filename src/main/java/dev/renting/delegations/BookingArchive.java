@@ -0,0 +1,187 @@
+package dev.renting.delegations;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Archive tier for completed bookings.
+ *
+ * A nightly job moves the bookings that ended more than {@code renting.archive.retention-days}
+ * ago out of the Bookings table into local {@link BookingSegment} files, so the live table
+ * (and every scan of it) only holds recent and upcoming rentals. The min/max date of each
+ * segment is kept in memory, so history queries only open the segments overlapping the
+ * requested period.
+ *
+ * The segments are files on the local disk of the instance that archived them, so archiving
+ * is off unless {@code renting.archive.enabled} is set, and must be enabled on exactly one
+ * instance with a persistent volume. Only that instance answers history queries and
+ * rebuilds occupancy with the archived bookings; on the others both see live bookings only.
+ */
+@Component
+public class BookingArchive {
+
+    private final DelegationRepository delegationRepository;
+    private final Path archiveDir;
+    private final int retentionDays;
+    private final int segmentRows;
+    private final boolean enabled;
+
+    // Header index of every segment on disk
+    private final List<BookingSegment> segments = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    public BookingArchive(DelegationRepository delegationRepository,
+                          @Value("${renting.archive.dir:data/booking-archive}") String archiveDir,
+                          @Value("${renting.archive.retention-days:90}") int retentionDays,
+                          @Value("${renting.archive.segment-rows:100000}") int segmentRows,
+                          @Value("${renting.archive.enabled:false}") boolean enabled) {
+        this.delegationRepository = delegationRepository;
+        this.archiveDir = Path.of(archiveDir);
+        this.retentionDays = retentionDays;
+        this.segmentRows = segmentRows;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    void loadIndex() throws IOException {
+        if (!Files.isDirectory(archiveDir)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(archiveDir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(BookingSegment.EXTENSION + ".tmp")) {
+                    // Left by an interrupted run whose bookings are still in the live table
+                    Files.delete(file);
+                } else if (name.endsWith(BookingSegment.EXTENSION)) {
+                    try {
+                        segments.add(BookingSegment.open(file));
+                    } catch (IOException e) {
+                        System.err.println("WARNING: Skipping unreadable booking segment " + file + ": " + e.getMessage());
+                    }
+                }
+            }
+        }
+        System.out.println("DEBUG: Booking archive has " + segments.size() + " segments.");
+    }
+
+    /**
+     * Moves the bookings that ended before the retention cutoff to new segments.
+     * Bookings are only deleted from the live table once their segment is on disk; if the
+     * run stops halfway, the remaining ones are still live and are skipped as duplicates
+     * by {@link #findBookings}.
+     */
+    @Scheduled(cron = "${renting.archive.cron:0 30 3 * * *}")
+    public synchronized void archiveCompletedBookings() {
+        // Every instance runs the schedule, but only the designated one may move bookings off the shared table
+        if (!enabled) {
+            return;
+        }
+        String cutoff = LocalDate.now().minusDays(retentionDays).toString();
+        List<Booking> completed = new ArrayList<>();
+        for (Booking booking : delegationRepository.listBookingsEndingBefore(cutoff)) {
+            if (hasValidDates(booking)) {
+                completed.add(booking);
+            } else {
+                System.err.println("WARNING: Not archiving booking with invalid dates: " + booking.getBookingId());
+            }
+        }
+        if (completed.isEmpty()) {
+            return;
+        }
+        int archived = 0;
+        try {
+            Files.createDirectories(archiveDir);
+            for (int from = 0; from < completed.size(); from += segmentRows) {
+                List<Booking> batch = completed.subList(from, Math.min(from + segmentRows, completed.size()));
+                Path file = archiveDir.resolve("bookings-" + System.currentTimeMillis() + "-" + from + BookingSegment.EXTENSION);
+                segments.add(BookingSegment.write(file, batch));
+                for (Booking booking : batch) {
+                    delegationRepository.delete(booking);
+                }
+                archived += batch.size();
+            }
+        } catch (IOException e) {
+            System.err.println("ERROR: Booking archive run failed: " + e.getMessage());
+        }
+        System.out.println("DEBUG: Archived " + archived + " bookings that ended before " + cutoff + ".");
+    }
+
+    /**
+     * Returns the archived bookings overlapping the period, optionally of a single delegation.
+     */
+    public List<Booking> findArchivedBookings(LocalDate startDate, LocalDate endDate, String delegationId) {
+        long fromDay = startDate.toEpochDay();
+        long toDay = endDate.toEpochDay();
+        List<Booking> result = new ArrayList<>();
+        for (BookingSegment segment : segments) {
+            if (!segment.overlaps(fromDay, toDay)) {
+                continue;
+            }
+            try {
+                result.addAll(segment.find(fromDay, toDay, delegationId));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read booking segment " + segment.path, e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns live and archived bookings overlapping the period, sorted by start date.
+     */
+    public List<Booking> findBookings(LocalDate startDate, LocalDate endDate, String delegationId) {
+        // Keyed by carId/startDate so a booking caught between archiving and deletion appears once
+        Map<String, Booking> bookings = new LinkedHashMap<>();
+        for (Booking booking : findArchivedBookings(startDate, endDate, delegationId)) {
+            bookings.put(booking.getCarId() + "|" + booking.getStartDate(), booking);
+        }
+        for (Booking booking : delegationRepository.listAllItems(Booking.class)) {
+            if (hasValidDates(booking)
+                    && (delegationId == null || delegationId.equals(booking.getDelegationId()))
+                    && booking.overlapsWith(startDate, endDate)) {
+                bookings.put(booking.getCarId() + "|" + booking.getStartDate(), booking);
+            }
+        }
+        List<Booking> result = new ArrayList<>(bookings.values());
+        result.sort(Comparator.comparing(Booking::getStartDate));
+        return result;
+    }
+
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    private static boolean hasValidDates(Booking booking) {
+        if (booking.getStartDate() == null || booking.getEndDate() == null) {
+            return false;
+        }
+        try {
+            LocalDate.parse(booking.getStartDate());
+            LocalDate.parse(booking.getEndDate());
+            if (booking.getBookingDate() != null) {
+                LocalDate.parse(booking.getBookingDate());
+            }
+            return true;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+}
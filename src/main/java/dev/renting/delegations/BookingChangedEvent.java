@@ -0,0 +1,38 @@
+package dev.renting.delegations;
+
+/**
+ * Published after a booking has been written to or removed from the Bookings table.
+ * Listeners run synchronously on the thread that committed the change. Changes made on
+ * other instances are published again here with {@link #isRemote()} set (see ClusterEventRelay).
+ */
+public class BookingChangedEvent {
+
+    public enum Type { SAVED, DELETED }
+
+    private final Booking booking;
+    private final Type type;
+    private final boolean remote;
+
+    public BookingChangedEvent(Booking booking, Type type) {
+        this(booking, type, false);
+    }
+
+    public BookingChangedEvent(Booking booking, Type type, boolean remote) {
+        this.booking = booking;
+        this.type = type;
+        this.remote = remote;
+    }
+
+    public Booking getBooking() {
+        return booking;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    // True when the booking was changed on another instance; the table is already up to date
+    public boolean isRemote() {
+        return remote;
+    }
+}
@@ -0,0 +1,44 @@
+package dev.renting.delegations;
+
+import java.util.List;
+
+/**
+ * One page of a booking list. Pass {@code nextCursor} back to get the following page;
+ * it is null on the last page.
+ */
+public class BookingPage {
+    private static final int DEFAULT_LIMIT = 20;
+    private static final int MAX_LIMIT = 100;
+
+    private List<Booking> items;
+    private String nextCursor;
+
+    // Constructor vacío requerido por Hilla para serializar el objeto
+    public BookingPage() {}
+
+    public BookingPage(List<Booking> items, String nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    // Page size for a requested limit: 1 to 100, 20 if not positive
+    public static int limit(int requested) {
+        return requested <= 0 ? DEFAULT_LIMIT : Math.min(requested, MAX_LIMIT);
+    }
+
+    public List<Booking> getItems() {
+        return items;
+    }
+
+    public void setItems(List<Booking> items) {
+        this.items = items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
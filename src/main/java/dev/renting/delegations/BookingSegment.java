@@ -0,0 +1,366 @@
+package dev.renting.delegations;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compressed, column-oriented file holding a batch of archived bookings.
+ *
+ * Layout: a fixed header (magic, version, row count, min start day, max end day), a column
+ * directory (offset, compressed and raw length of each column) and the Deflate-compressed
+ * columns. Dates are stored as varint deltas of epoch days over rows sorted by start date;
+ * strings are dictionary encoded. Readers check the header range first and then only
+ * decompress the columns they need: date columns to filter, string columns for the rows
+ * that match.
+ */
+final class BookingSegment {
+
+    static final String EXTENSION = ".seg";
+    private static final int MAGIC = 0x424B5347; // "BKSG"
+    private static final int VERSION = 1;
+
+    private static final int COL_START = 0;
+    private static final int COL_DURATION = 1;
+    private static final int COL_BOOKING_DATE = 2;
+    private static final int COL_CAR = 3;
+    private static final int COL_USER = 4;
+    private static final int COL_DELEGATION = 5;
+    private static final int COL_BOOKING_ID = 6;
+    private static final int COLUMN_COUNT = 7;
+    // magic, version, rows, min start, max end
+    private static final int FIXED_HEADER_BYTES = 5 * Integer.BYTES;
+    private static final int DIRECTORY_BYTES = COLUMN_COUNT * (Long.BYTES + 2 * Integer.BYTES);
+
+    final Path path;
+    final int rowCount;
+    final long minStartDay;
+    final long maxEndDay;
+    private final long[] columnOffsets = new long[COLUMN_COUNT];
+    private final int[] compressedLengths = new int[COLUMN_COUNT];
+    private final int[] rawLengths = new int[COLUMN_COUNT];
+
+    private BookingSegment(Path path, int rowCount, long minStartDay, long maxEndDay) {
+        this.path = path;
+        this.rowCount = rowCount;
+        this.minStartDay = minStartDay;
+        this.maxEndDay = maxEndDay;
+    }
+
+    boolean overlaps(long fromDay, long toDay) {
+        return minStartDay <= toDay && maxEndDay >= fromDay;
+    }
+
+    /**
+     * Writes the bookings to a new segment file. Every booking must have valid start and end dates.
+     */
+    static BookingSegment write(Path path, List<Booking> bookings) throws IOException {
+        List<Booking> rows = new ArrayList<>(bookings);
+        rows.sort(Comparator.comparing(Booking::getStartDate));
+        int n = rows.size();
+        long[] startDays = new long[n];
+        long[] endDays = new long[n];
+        long minStart = Long.MAX_VALUE;
+        long maxEnd = Long.MIN_VALUE;
+        for (int i = 0; i < n; i++) {
+            startDays[i] = LocalDate.parse(rows.get(i).getStartDate()).toEpochDay();
+            endDays[i] = LocalDate.parse(rows.get(i).getEndDate()).toEpochDay();
+            minStart = Math.min(minStart, startDays[i]);
+            maxEnd = Math.max(maxEnd, endDays[i]);
+        }
+
+        byte[][] columns = new byte[COLUMN_COUNT][];
+        ByteArrayOutputStream column = new ByteArrayOutputStream();
+        long previous = minStart;
+        for (int i = 0; i < n; i++) {
+            writeVarLong(column, startDays[i] - previous); // Sorted, so never negative
+            previous = startDays[i];
+        }
+        columns[COL_START] = column.toByteArray();
+        column.reset();
+        for (int i = 0; i < n; i++) {
+            writeVarLong(column, zigZag(endDays[i] - startDays[i]));
+        }
+        columns[COL_DURATION] = column.toByteArray();
+        column.reset();
+        for (int i = 0; i < n; i++) {
+            String bookingDate = rows.get(i).getBookingDate();
+            // 0 means no booking date, otherwise the zig-zag distance to the start day plus one
+            writeVarLong(column, bookingDate == null ? 0 : zigZag(startDays[i] - LocalDate.parse(bookingDate).toEpochDay()) + 1);
+        }
+        columns[COL_BOOKING_DATE] = column.toByteArray();
+        columns[COL_CAR] = encodeStrings(rows, Booking::getCarId);
+        columns[COL_USER] = encodeStrings(rows, Booking::getUserId);
+        columns[COL_DELEGATION] = encodeStrings(rows, Booking::getDelegationId);
+        columns[COL_BOOKING_ID] = encodeStrings(rows, Booking::getBookingId);
+
+        BookingSegment segment = new BookingSegment(path, n, minStart, maxEnd);
+        byte[][] compressed = new byte[COLUMN_COUNT][];
+        long offset = FIXED_HEADER_BYTES + DIRECTORY_BYTES;
+        for (int c = 0; c < COLUMN_COUNT; c++) {
+            compressed[c] = deflate(columns[c]);
+            segment.columnOffsets[c] = offset;
+            segment.compressedLengths[c] = compressed[c].length;
+            segment.rawLengths[c] = columns[c].length;
+            offset += compressed[c].length;
+        }
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream(FIXED_HEADER_BYTES + DIRECTORY_BYTES);
+        DataOutputStream out = new DataOutputStream(header);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(n);
+        out.writeInt((int) minStart);
+        out.writeInt((int) maxEnd);
+        for (int c = 0; c < COLUMN_COUNT; c++) {
+            out.writeLong(segment.columnOffsets[c]);
+            out.writeInt(segment.compressedLengths[c]);
+            out.writeInt(segment.rawLengths[c]);
+        }
+        // Written under a temporary name so a crash never leaves a partial segment behind
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE)) {
+            writeFully(channel, ByteBuffer.wrap(header.toByteArray()));
+            for (byte[] bytes : compressed) {
+                writeFully(channel, ByteBuffer.wrap(bytes));
+            }
+            // The live rows are deleted right after this, so the segment must be durable first
+            channel.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.ATOMIC_MOVE);
+        return segment;
+    }
+
+    /**
+     * Opens a segment reading only its header and column directory.
+     */
+    static BookingSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_BYTES + DIRECTORY_BYTES);
+            readFully(channel, header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException("Not a booking segment: " + path);
+            }
+            BookingSegment segment = new BookingSegment(path, header.getInt(), header.getInt(), header.getInt());
+            for (int c = 0; c < COLUMN_COUNT; c++) {
+                segment.columnOffsets[c] = header.getLong();
+                segment.compressedLengths[c] = header.getInt();
+                segment.rawLengths[c] = header.getInt();
+            }
+            return segment;
+        }
+    }
+
+    /**
+     * Returns the bookings overlapping [fromDay, toDay], optionally only those of one delegation.
+     */
+    List<Booking> find(long fromDay, long toDay, String delegationId) throws IOException {
+        List<Booking> result = new ArrayList<>();
+        if (!overlaps(fromDay, toDay)) {
+            return result;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            DataInputStream starts = column(channel, COL_START);
+            DataInputStream durations = column(channel, COL_DURATION);
+            long[] startDays = new long[rowCount];
+            long[] endDays = new long[rowCount];
+            boolean[] matches = new boolean[rowCount];
+            int matchCount = 0;
+            long day = minStartDay;
+            for (int i = 0; i < rowCount; i++) {
+                day += readVarLong(starts);
+                startDays[i] = day;
+                endDays[i] = day + unZigZag(readVarLong(durations));
+                if (startDays[i] > toDay) {
+                    break; // Rows are sorted by start day
+                }
+                if (endDays[i] >= fromDay) {
+                    matches[i] = true;
+                    matchCount++;
+                }
+            }
+            if (matchCount == 0) {
+                return result;
+            }
+
+            String[] delegations = decodeStrings(column(channel, COL_DELEGATION), rowCount);
+            if (delegationId != null) {
+                for (int i = 0; i < rowCount; i++) {
+                    matches[i] &= delegationId.equals(delegations[i]);
+                }
+            }
+            DataInputStream bookingDates = column(channel, COL_BOOKING_DATE);
+            String[] cars = decodeStrings(column(channel, COL_CAR), rowCount);
+            String[] users = decodeStrings(column(channel, COL_USER), rowCount);
+            String[] bookingIds = decodeStrings(column(channel, COL_BOOKING_ID), rowCount);
+            for (int i = 0; i < rowCount; i++) {
+                long bookingDateCode = readVarLong(bookingDates);
+                if (!matches[i]) {
+                    continue;
+                }
+                Booking booking = new Booking();
+                booking.setCarId(cars[i]);
+                booking.setStartDate(LocalDate.ofEpochDay(startDays[i]).toString());
+                booking.setEndDate(LocalDate.ofEpochDay(endDays[i]).toString());
+                booking.setUserId(users[i]);
+                booking.setDelegationId(delegations[i]);
+                booking.setBookingId(bookingIds[i]);
+                if (bookingDateCode != 0) {
+                    booking.setBookingDate(LocalDate.ofEpochDay(startDays[i] - unZigZag(bookingDateCode - 1)).toString());
+                }
+                result.add(booking);
+            }
+        }
+        return result;
+    }
+
+    private DataInputStream column(FileChannel channel, int c) throws IOException {
+        ByteBuffer compressed = ByteBuffer.allocate(compressedLengths[c]);
+        readFully(channel, compressed, columnOffsets[c]);
+        byte[] raw = new byte[rawLengths[c]];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed.array());
+            int inflated = 0;
+            while (inflated < raw.length && !inflater.finished()) {
+                int count = inflater.inflate(raw, inflated, raw.length - inflated);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated column");
+                }
+                inflated += count;
+            }
+            if (inflated < raw.length) {
+                throw new DataFormatException("Column ends after " + inflated + " of " + raw.length + " bytes");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt column " + c + " in " + path, e);
+        } finally {
+            inflater.end();
+        }
+        return new DataInputStream(new ByteArrayInputStream(raw));
+    }
+
+    // Dictionary of distinct values followed by one code per row (0 = null)
+    private static byte[] encodeStrings(List<Booking> rows, Function<Booking, String> getter) {
+        Map<String, Integer> codes = new HashMap<>();
+        List<String> dictionary = new ArrayList<>();
+        int[] rowCodes = new int[rows.size()];
+        for (int i = 0; i < rows.size(); i++) {
+            String value = getter.apply(rows.get(i));
+            if (value != null) {
+                rowCodes[i] = codes.computeIfAbsent(value, v -> {
+                    dictionary.add(v);
+                    return dictionary.size();
+                });
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeVarLong(out, dictionary.size());
+        for (String value : dictionary) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(out, bytes.length);
+            out.writeBytes(bytes);
+        }
+        for (int code : rowCodes) {
+            writeVarLong(out, code);
+        }
+        return out.toByteArray();
+    }
+
+    private static String[] decodeStrings(DataInputStream in, int rows) throws IOException {
+        String[] dictionary = new String[(int) readVarLong(in) + 1];
+        for (int i = 1; i < dictionary.length; i++) {
+            dictionary[i] = new String(in.readNBytes((int) readVarLong(in)), StandardCharsets.UTF_8);
+        }
+        String[] values = new String[rows];
+        for (int i = 0; i < rows; i++) {
+            values[i] = dictionary[(int) readVarLong(in)];
+        }
+        return values;
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 4));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeVarLong(OutputStream out, long value) {
+        try {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // ByteArrayOutputStream does not throw
+        }
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of segment");
+            }
+        }
+    }
+}
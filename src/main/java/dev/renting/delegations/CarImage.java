@@ -0,0 +1,87 @@
+package dev.renting.delegations;
+
+/**
+ * Manifest entry of an image bundled under /images.
+ */
+public class CarImage {
+    private String filename;
+    private String contentType;
+    private long size;
+    private int width;
+    private int height;
+    private String sha256;
+    private String make;  // Solo para las imágenes de coches (Marca_Modelo.webp)
+    private String model;
+
+    // Constructor vacío requerido por Hilla para serializar el objeto
+    public CarImage() {}
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public void setWidth(int width) {
+        this.width = width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public void setHeight(int height) {
+        this.height = height;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    public void setSha256(String sha256) {
+        this.sha256 = sha256;
+    }
+
+    public String getMake() {
+        return make;
+    }
+
+    public void setMake(String make) {
+        this.make = make;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public void setModel(String model) {
+        this.model = model;
+    }
+
+    // Strong ETag derived from the content hash
+    public String etag() {
+        return "\"" + sha256 + "\"";
+    }
+}
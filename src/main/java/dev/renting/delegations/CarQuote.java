@@ -0,0 +1,74 @@
+package dev.renting.delegations;
+
+/**
+ * The price of renting a car for a period, in euros: subtotal after the season and
+ * duration tariffs, tax, and total to pay.
+ */
+public class CarQuote {
+    private Car car;
+    private int days;
+    private int discountPercent;
+    private double subtotal;
+    private double tax;
+    private double total;
+
+    // Constructor vacío requerido por Hilla para serializar el objeto
+    public CarQuote() {}
+
+    public CarQuote(Car car, int days, int discountPercent, double subtotal, double tax, double total) {
+        this.car = car;
+        this.days = days;
+        this.discountPercent = discountPercent;
+        this.subtotal = subtotal;
+        this.tax = tax;
+        this.total = total;
+    }
+
+    public Car getCar() {
+        return car;
+    }
+
+    public void setCar(Car car) {
+        this.car = car;
+    }
+
+    public int getDays() {
+        return days;
+    }
+
+    public void setDays(int days) {
+        this.days = days;
+    }
+
+    public int getDiscountPercent() {
+        return discountPercent;
+    }
+
+    public void setDiscountPercent(int discountPercent) {
+        this.discountPercent = discountPercent;
+    }
+
+    public double getSubtotal() {
+        return subtotal;
+    }
+
+    public void setSubtotal(double subtotal) {
+        this.subtotal = subtotal;
+    }
+
+    public double getTax() {
+        return tax;
+    }
+
+    public void setTax(double tax) {
+        this.tax = tax;
+    }
+
+    public double getTotal() {
+        return total;
+    }
+
+    public void setTotal(double total) {
+        this.total = total;
+    }
+}
@@ -0,0 +1,403 @@
+package dev.renting.delegations;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read-only copy of the catalog (delegation profiles and cars) and of the bookings that
+ * have not ended more than {@code renting.snapshot.booking-days} ago, used by
+ * {@link DegradedMode} to keep browsing working while DynamoDB throttles or is unreachable.
+ *
+ * The copy is taken from the tables every {@code renting.snapshot.refresh-ms}; booking
+ * saves and deletes, local or relayed from other instances, are applied to it as they
+ * happen. Each refresh is written to a memory-mapped file, which is loaded on startup so an
+ * instance started during an outage has data to serve. The age of the snapshot is the
+ * time since the last successful refresh.
+ */
+@Component
+public class CatalogSnapshot {
+
+    private static final int FILE_MAGIC = 0x534E4150; // "SNAP"
+    private static final int FILE_VERSION = 1;
+
+    private final DelegationRepository delegationRepository;
+    private final Path snapshotFile;
+    private final int bookingDays;
+
+    private volatile State state;
+    // Booking changes seen while a refresh scans, replayed into its copy; null when no refresh runs
+    private List<BookingChangedEvent> changesDuringRefresh;
+    private final Object changesLock = new Object();
+
+    // One consistent copy; bookings change in place, the rest is replaced by the next refresh
+    private static final class State {
+        final long takenAtMillis;
+        final List<Delegation> profiles;
+        final List<Car> cars;
+        final Map<String, List<Booking>> bookingsByCar = new ConcurrentHashMap<>();
+
+        State(long takenAtMillis, List<Delegation> profiles, List<Car> cars, List<Booking> bookings) {
+            this.takenAtMillis = takenAtMillis;
+            this.profiles = Collections.unmodifiableList(profiles);
+            this.cars = Collections.unmodifiableList(cars);
+            for (Booking booking : bookings) {
+                bookingsByCar.computeIfAbsent(booking.getCarId(), id -> new ArrayList<>()).add(booking);
+            }
+        }
+    }
+
+    @Autowired
+    public CatalogSnapshot(DelegationRepository delegationRepository,
+                           @Value("${renting.snapshot.file:data/catalog-snapshot.bin}") String snapshotFile,
+                           @Value("${renting.snapshot.booking-days:30}") int bookingDays) {
+        this.delegationRepository = delegationRepository;
+        this.snapshotFile = Path.of(snapshotFile);
+        this.bookingDays = bookingDays;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        try {
+            if (load()) {
+                System.out.println("DEBUG: Catalog snapshot loaded from " + snapshotFile + ", " + getAgeMillis() / 1000
+                        + " s old.");
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("WARNING: Could not read catalog snapshot: " + e.getMessage());
+        }
+        Thread.ofVirtual().name("catalog-snapshot").start(this::refresh);
+    }
+
+    /**
+     * Copies the catalog and recent bookings from the tables. On failure the previous
+     * snapshot stays in place and keeps ageing.
+     */
+    @Scheduled(fixedDelayString = "${renting.snapshot.refresh-ms:300000}", initialDelayString = "${renting.snapshot.refresh-ms:300000}")
+    public synchronized void refresh() {
+        long takenAt = System.currentTimeMillis();
+        synchronized (changesLock) {
+            changesDuringRefresh = new ArrayList<>();
+        }
+        State fresh;
+        try {
+            List<Delegation> profiles = new ArrayList<>();
+            for (Delegation delegation : delegationRepository.listAllDelegations()) {
+                if ("profile".equals(delegation.getOperation())) {
+                    profiles.add(delegation);
+                }
+            }
+            String cutoff = LocalDate.now().minusDays(bookingDays).toString();
+            List<Booking> bookings = new ArrayList<>();
+            for (Booking booking : delegationRepository.listAllItems(Booking.class)) {
+                // Dates are ISO strings, so they compare like the dates themselves
+                if (booking.getCarId() != null && (booking.getEndDate() == null || booking.getEndDate().compareTo(cutoff) >= 0)) {
+                    bookings.add(booking);
+                }
+            }
+            fresh = new State(takenAt, profiles, delegationRepository.listAllCars(), bookings);
+        } catch (RuntimeException e) {
+            System.err.println("WARNING: Catalog snapshot not refreshed, keeping the one from "
+                    + (state != null ? getAgeMillis() / 1000 + " s ago" : "nowhere") + ": " + e.getMessage());
+            synchronized (changesLock) {
+                changesDuringRefresh = null;
+            }
+            return;
+        }
+        synchronized (changesLock) {
+            // The scan may have missed changes made while it ran; applying one it saw again is harmless
+            for (BookingChangedEvent change : changesDuringRefresh) {
+                apply(fresh, change);
+            }
+            changesDuringRefresh = null;
+            state = fresh;
+        }
+        try {
+            persist(fresh);
+        } catch (IOException e) {
+            System.err.println("WARNING: Could not write catalog snapshot: " + e.getMessage());
+        }
+    }
+
+    @EventListener
+    public void onBookingChanged(BookingChangedEvent event) {
+        State current;
+        synchronized (changesLock) {
+            if (changesDuringRefresh != null) {
+                changesDuringRefresh.add(event);
+            }
+            current = state;
+        }
+        if (current != null) {
+            apply(current, event);
+        }
+    }
+
+    private static void apply(State current, BookingChangedEvent event) {
+        Booking booking = event.getBooking();
+        if (booking.getCarId() == null) {
+            return;
+        }
+        current.bookingsByCar.compute(booking.getCarId(), (carId, bookings) -> {
+            List<Booking> updated = new ArrayList<>(bookings != null ? bookings : List.of());
+            updated.removeIf(b -> b.getStartDate() != null && b.getStartDate().equals(booking.getStartDate()));
+            if (event.getType() == BookingChangedEvent.Type.SAVED) {
+                updated.add(booking);
+            }
+            return updated.isEmpty() ? null : updated;
+        });
+    }
+
+    public boolean isLoaded() {
+        return state != null;
+    }
+
+    // Milliseconds since the snapshot was taken, Long.MAX_VALUE if there is none
+    public long getAgeMillis() {
+        State current = state;
+        return current == null ? Long.MAX_VALUE : System.currentTimeMillis() - current.takenAtMillis;
+    }
+
+    public List<Delegation> getProfiles() {
+        return requireState().profiles;
+    }
+
+    public List<Car> getCars() {
+        return requireState().cars;
+    }
+
+    public List<Booking> getBookings() {
+        List<Booking> bookings = new ArrayList<>();
+        requireState().bookingsByCar.values().forEach(bookings::addAll);
+        return bookings;
+    }
+
+    // Same rule as AvailabilityService, against the snapshot; bookings with bad dates count as overlapping
+    public boolean hasOverlappingBooking(String carId, LocalDate startDate, LocalDate endDate) {
+        List<Booking> bookings = requireState().bookingsByCar.get(carId);
+        if (bookings == null) {
+            return false;
+        }
+        for (Booking booking : bookings) {
+            try {
+                if (booking.overlapsWith(startDate, endDate)) {
+                    return true;
+                }
+            } catch (DateTimeParseException | NullPointerException e) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private State requireState() {
+        State current = state;
+        if (current == null) {
+            throw new IllegalStateException("No catalog snapshot available.");
+        }
+        return current;
+    }
+
+    // Written to a temporary file through a mapping and moved over the old one, so readers never see half a file
+    private void persist(State snapshot) throws IOException {
+        ByteBuffer buffer = encode(snapshot);
+        Path parent = snapshotFile.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, buffer.remaining());
+            mapped.put(buffer);
+            mapped.force();
+        }
+        Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private boolean load() throws IOException {
+        if (!Files.exists(snapshotFile)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(snapshotFile, StandardOpenOption.READ)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (mapped.getInt() != FILE_MAGIC || mapped.getInt() != FILE_VERSION) {
+                throw new IOException("Unknown snapshot format");
+            }
+            long takenAt = mapped.getLong();
+            List<Delegation> profiles = new ArrayList<>();
+            for (int i = mapped.getInt(); i > 0; i--) {
+                profiles.add(readDelegation(mapped));
+            }
+            List<Car> cars = new ArrayList<>();
+            for (int i = mapped.getInt(); i > 0; i--) {
+                cars.add(readCar(mapped));
+            }
+            List<Booking> bookings = new ArrayList<>();
+            for (int i = mapped.getInt(); i > 0; i--) {
+                bookings.add(readBooking(mapped));
+            }
+            // A refresh may have finished while reading; keep the newer copy
+            if (state == null) {
+                state = new State(takenAt, profiles, cars, bookings);
+            }
+            return true;
+        }
+    }
+
+    private static ByteBuffer encode(State snapshot) {
+        Output out = new Output();
+        out.putInt(FILE_MAGIC);
+        out.putInt(FILE_VERSION);
+        out.putLong(snapshot.takenAtMillis);
+        out.putInt(snapshot.profiles.size());
+        for (Delegation d : snapshot.profiles) {
+            out.putString(d.getDelegationId());
+            out.putString(d.getOperation());
+            out.putString(d.getName());
+            out.putString(d.getAdress());
+            out.putString(d.getCity());
+            out.putString(d.getManager());
+            out.putString(d.getTelf());
+            out.putInt(d.getCarQuantity());
+            out.putInt(d.getActiveBookings());
+            out.putDouble(d.getLat());
+            out.putDouble(d.getLongVal());
+        }
+        out.putInt(snapshot.cars.size());
+        for (Car c : snapshot.cars) {
+            out.putString(c.getDelegationId());
+            out.putString(c.getOperation());
+            out.putString(c.getMake());
+            out.putString(c.getModel());
+            out.putInt(c.getYear());
+            out.putString(c.getColor());
+            out.putInt(c.isRented() ? 1 : 0);
+            out.putInt(c.getPrice());
+        }
+        List<Booking> bookings = new ArrayList<>();
+        snapshot.bookingsByCar.values().forEach(bookings::addAll);
+        out.putInt(bookings.size());
+        for (Booking b : bookings) {
+            out.putString(b.getCarId());
+            out.putString(b.getStartDate());
+            out.putString(b.getEndDate());
+            out.putString(b.getUserId());
+            out.putString(b.getDelegationId());
+            out.putString(b.getBookingId());
+            out.putString(b.getBookingDate());
+        }
+        return out.buffer.flip();
+    }
+
+    private static Delegation readDelegation(ByteBuffer in) {
+        Delegation d = new Delegation();
+        d.setDelegationId(getString(in));
+        d.setOperation(getString(in));
+        d.setName(getString(in));
+        d.setAdress(getString(in));
+        d.setCity(getString(in));
+        d.setManager(getString(in));
+        d.setTelf(getString(in));
+        d.setCarQuantity(in.getInt());
+        d.setActiveBookings(in.getInt());
+        d.setLat(in.getDouble());
+        d.setLongVal(in.getDouble());
+        return d;
+    }
+
+    private static Car readCar(ByteBuffer in) {
+        Car c = new Car();
+        c.setDelegationId(getString(in));
+        c.setOperation(getString(in));
+        c.setMake(getString(in));
+        c.setModel(getString(in));
+        c.setYear(in.getInt());
+        c.setColor(getString(in));
+        c.setRented(in.getInt() != 0);
+        c.setPrice(in.getInt());
+        return c;
+    }
+
+    private static Booking readBooking(ByteBuffer in) {
+        Booking b = new Booking();
+        b.setCarId(getString(in));
+        b.setStartDate(getString(in));
+        b.setEndDate(getString(in));
+        b.setUserId(getString(in));
+        b.setDelegationId(getString(in));
+        b.setBookingId(getString(in));
+        b.setBookingDate(getString(in));
+        return b;
+    }
+
+    // Strings are an int length (-1 for null) followed by UTF-8 bytes
+    private static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Growable heap buffer the snapshot is encoded into before it is copied to the mapping
+    private static final class Output {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                larger.put(buffer.flip());
+                buffer = larger;
+            }
+        }
+
+        void putInt(int value) {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        void putLong(long value) {
+            ensure(8);
+            buffer.putLong(value);
+        }
+
+        void putDouble(double value) {
+            ensure(8);
+            buffer.putDouble(value);
+        }
+
+        void putString(String value) {
+            if (value == null) {
+                putInt(-1);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            ensure(4 + bytes.length);
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package dev.renting.delegations;
+
+import dev.renting.config.InvalidationEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Maps the changes of this package to and from {@link InvalidationEvent}s, so they reach
+ * the other instances through the invalidation bus.
+ *
+ * Booking changes travel with the fields listeners need (dates, delegation), and are
+ * published on the receiving instance as a remote {@link BookingChangedEvent}, which
+ * updates its occupancy aggregates and availability subscribers.
+ */
+@Component
+public class ClusterEventRelay {
+
+    static final String CAR = "car";
+    static final String DELEGATION = "delegation";
+    static final String BOOKING = "booking";
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    public ClusterEventRelay(ApplicationEventPublisher eventPublisher) {
+        this.eventPublisher = eventPublisher;
+    }
+
+    @EventListener
+    public void onBookingChanged(BookingChangedEvent event) {
+        if (event.isRemote()) {
+            return;
+        }
+        Booking booking = event.getBooking();
+        eventPublisher.publishEvent(new InvalidationEvent(BOOKING, booking.getCarId(),
+                event.getType().name(), booking.getStartDate(), booking.getEndDate(), booking.getDelegationId(),
+                booking.getUserId(), booking.getBookingId(), booking.getBookingDate()));
+    }
+
+    @EventListener
+    public void onInvalidation(InvalidationEvent event) {
+        if (!event.isRemote() || !BOOKING.equals(event.getNamespace()) || event.getValues().size() < 7) {
+            return;
+        }
+        Booking booking = new Booking();
+        booking.setCarId(event.getKey());
+        booking.setStartDate(event.getValues().get(1));
+        booking.setEndDate(event.getValues().get(2));
+        booking.setDelegationId(event.getValues().get(3));
+        booking.setUserId(event.getValues().get(4));
+        booking.setBookingId(event.getValues().get(5));
+        booking.setBookingDate(event.getValues().get(6));
+        BookingChangedEvent.Type type = BookingChangedEvent.Type.valueOf(event.getValues().get(0));
+        eventPublisher.publishEvent(new BookingChangedEvent(booking, type, true));
+    }
+}
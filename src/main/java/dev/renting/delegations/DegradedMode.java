@@ -0,0 +1,168 @@
+package dev.renting.delegations;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import software.amazon.awssdk.awscore.exception.AwsServiceException;
+import software.amazon.awssdk.core.exception.SdkClientException;
+import software.amazon.awssdk.services.dynamodb.model.ProvisionedThroughputExceededException;
+import software.amazon.awssdk.services.dynamodb.model.RequestLimitExceededException;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Serves endpoint reads from the {@link CatalogSnapshot} while DynamoDB throttles or is
+ * unreachable, instead of failing them.
+ *
+ * A read that fails with throttling, a timeout, a 5xx or a client-side error is answered
+ * from the snapshot; a write that fails that way is reported as is. Either way, for the
+ * next {@code renting.degraded.fail-fast-ms} reads go to the snapshot directly and writes
+ * are rejected at once, so requests do not pile up behind timeouts. Responses served from
+ * the snapshot carry {@code Warning: 110} and {@code X-Stale-Age-Seconds} headers. The
+ * snapshot is only used while it is younger than {@code renting.degraded.max-staleness-ms};
+ * past that the original error is returned.
+ */
+@Component
+public class DegradedMode {
+
+    static final String STALE_AGE_HEADER = "X-Stale-Age-Seconds";
+
+    private final CatalogSnapshot snapshot;
+    private final long failFastMs;
+    private final long maxStalenessMs;
+
+    private volatile long degradedUntilMillis;
+    private final LongAdder staleReads = new LongAdder();
+    private final LongAdder rejectedWrites = new LongAdder();
+    private long staleReadsAtLastReport;
+
+    @Autowired
+    public DegradedMode(CatalogSnapshot snapshot,
+                        @Value("${renting.degraded.fail-fast-ms:5000}") long failFastMs,
+                        @Value("${renting.degraded.max-staleness-ms:1800000}") long maxStalenessMs) {
+        this.snapshot = snapshot;
+        this.failFastMs = failFastMs;
+        this.maxStalenessMs = maxStalenessMs;
+    }
+
+    /**
+     * Runs the live read, or answers from the snapshot when DynamoDB is failing.
+     *
+     * @param live The read against DynamoDB.
+     * @param fromSnapshot The same read against {@link CatalogSnapshot}.
+     */
+    public <T> T read(Supplier<T> live, Supplier<T> fromSnapshot) {
+        if (isDegraded() && isSnapshotUsable()) {
+            return serveStale(fromSnapshot);
+        }
+        try {
+            return live.get();
+        } catch (RuntimeException e) {
+            if (!isOutage(e)) {
+                throw e;
+            }
+            degradedUntilMillis = System.currentTimeMillis() + failFastMs;
+            if (!isSnapshotUsable()) {
+                throw e;
+            }
+            System.err.println("WARNING: DynamoDB read failed, serving the catalog snapshot: " + e.getMessage());
+            return serveStale(fromSnapshot);
+        }
+    }
+
+    /**
+     * Runs a write against DynamoDB, entering degraded mode if it fails because DynamoDB is
+     * throttling or unreachable. The error is rethrown.
+     */
+    public <T> T write(Supplier<T> change) {
+        try {
+            return change.get();
+        } catch (RuntimeException e) {
+            if (isOutage(e)) {
+                degradedUntilMillis = System.currentTimeMillis() + failFastMs;
+                System.err.println("WARNING: DynamoDB write failed, rejecting writes for " + failFastMs + " ms: " + e.getMessage());
+            }
+            throw e;
+        }
+    }
+
+    public void write(Runnable change) {
+        write(() -> {
+            change.run();
+            return null;
+        });
+    }
+
+    // Rejects a write right away while reads are being served from the snapshot
+    public void checkWritable() {
+        long remainingMs = degradedUntilMillis - System.currentTimeMillis();
+        if (remainingMs > 0) {
+            rejectedWrites.increment();
+            throw new IllegalStateException("Changes are temporarily unavailable, please try again in "
+                    + Math.max(1, remainingMs / 1000) + " seconds.");
+        }
+    }
+
+    public boolean isDegraded() {
+        return degradedUntilMillis > System.currentTimeMillis();
+    }
+
+    private boolean isSnapshotUsable() {
+        return snapshot.isLoaded() && snapshot.getAgeMillis() <= maxStalenessMs;
+    }
+
+    private <T> T serveStale(Supplier<T> fromSnapshot) {
+        T result = fromSnapshot.get();
+        staleReads.increment();
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (attributes instanceof ServletRequestAttributes servletAttributes) {
+            HttpServletResponse response = servletAttributes.getResponse();
+            if (response != null) {
+                response.setHeader("Warning", "110 - \"Response is Stale\"");
+                response.setHeader(STALE_AGE_HEADER, Long.toString(snapshot.getAgeMillis() / 1000));
+            }
+        }
+        return result;
+    }
+
+    // Throttling, timeouts, DynamoDB 5xx and network errors; validation and conditional failures are not outages
+    static boolean isOutage(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SdkClientException) {
+                return true; // Includes ApiCallTimeoutException and connection failures
+            }
+            if (cause instanceof ProvisionedThroughputExceededException || cause instanceof RequestLimitExceededException) {
+                return true;
+            }
+            if (cause instanceof AwsServiceException serviceException) {
+                return serviceException.isThrottlingException() || serviceException.statusCode() >= 500;
+            }
+        }
+        return false;
+    }
+
+    public long getStaleReadCount() {
+        return staleReads.sum();
+    }
+
+    public long getRejectedWriteCount() {
+        return rejectedWrites.sum();
+    }
+
+    @Scheduled(fixedDelayString = "${renting.degraded.stats-interval-ms:60000}")
+    public void reportStats() {
+        long stale = staleReads.sum();
+        if (stale == staleReadsAtLastReport) {
+            return;
+        }
+        staleReadsAtLastReport = stale;
+        System.out.println("DEBUG: Degraded mode: " + stale + " reads served from the snapshot, "
+                + rejectedWrites.sum() + " writes rejected, snapshot " + snapshot.getAgeMillis() / 1000 + " s old.");
+    }
+}
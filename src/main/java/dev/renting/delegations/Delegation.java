@@ -15,7 +15,8 @@ public class Delegation {
     private String city;
     private String manager;
     private String telf;
-    private int carQuantity;
+    private int carQuantity;     // Mantenido con contadores atómicos (DelegationCounters)
+    private int activeBookings;  // Reservas que aún no han terminado, también mantenido por DelegationCounters
     private double lat;
     private double longVal; // 'long' es una palabra reservada en Java, usar 'longVal' o similar
 
@@ -96,6 +97,15 @@ public class Delegation {
         this.carQuantity = carQuantity;
     }
 
+    @DynamoDbAttribute("activeBookings")
+    public int getActiveBookings() {
+        return activeBookings;
+    }
+
+    public void setActiveBookings(int activeBookings) {
+        this.activeBookings = activeBookings;
+    }
+
     @DynamoDbAttribute("lat")
     public double getLat() {
         return lat;
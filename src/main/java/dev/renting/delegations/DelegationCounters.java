@@ -0,0 +1,110 @@
+package dev.renting.delegations;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the counters stored on each delegation profile (cars, active bookings) up to date
+ * with atomic DynamoDB {@code ADD} updates, so they can be read with a single GetItem.
+ *
+ * An active booking is one that has not ended yet. Counter updates are not in the same
+ * write as the car or booking they count, and bookings stop being active as days pass, so
+ * a reconciliation pass recounts everything once a day and corrects any drift.
+ */
+@Component
+public class DelegationCounters {
+
+    static final String CAR_QUANTITY = "carQuantity";
+    static final String ACTIVE_BOOKINGS = "activeBookings";
+
+    private final DelegationRepository delegationRepository;
+
+    @Autowired
+    public DelegationCounters(DelegationRepository delegationRepository) {
+        this.delegationRepository = delegationRepository;
+    }
+
+    public void carAdded(String delegationId) {
+        add(delegationId, CAR_QUANTITY, 1);
+    }
+
+    public void carRemoved(String delegationId) {
+        add(delegationId, CAR_QUANTITY, -1);
+    }
+
+    @EventListener
+    public void onBookingChanged(BookingChangedEvent event) {
+        Booking booking = event.getBooking();
+        // The instance that made the change has already counted it
+        if (event.isRemote() || booking.getDelegationId() == null || !isActive(booking, LocalDate.now())) {
+            return;
+        }
+        add(booking.getDelegationId(), ACTIVE_BOOKINGS, event.getType() == BookingChangedEvent.Type.SAVED ? 1 : -1);
+    }
+
+    private void add(String delegationId, String counter, long delta) {
+        if (delegationId == null) {
+            return;
+        }
+        if (!delegationRepository.addToDelegationCounter(delegationId, counter, delta)) {
+            System.err.println("WARNING: No profile for delegation " + delegationId + ", " + counter + " not updated.");
+        }
+    }
+
+    /**
+     * Recounts cars and active bookings of every delegation and corrects the stored counters.
+     * Each counter is only replaced if it did not change while counting; otherwise the
+     * next pass corrects it.
+     */
+    @Scheduled(cron = "${renting.counters.reconcile-cron:0 5 0 * * *}")
+    public void reconcile() {
+        // Read the counters before counting, so updates made while counting make the correction fail
+        List<Delegation> profiles = delegationRepository.listAllDelegations();
+        Map<String, Long> cars = new HashMap<>();
+        for (Car car : delegationRepository.listAllCars()) {
+            cars.merge(car.getDelegationId(), 1L, Long::sum);
+        }
+        Map<String, Long> activeBookings = new HashMap<>();
+        LocalDate today = LocalDate.now();
+        for (Booking booking : delegationRepository.listAllItems(Booking.class)) {
+            if (booking.getDelegationId() != null && isActive(booking, today)) {
+                activeBookings.merge(booking.getDelegationId(), 1L, Long::sum);
+            }
+        }
+
+        int corrected = 0;
+        int skipped = 0;
+        for (Delegation profile : profiles) {
+            String delegationId = profile.getDelegationId();
+            long actualCars = cars.getOrDefault(delegationId, 0L);
+            long actualBookings = activeBookings.getOrDefault(delegationId, 0L);
+            if (profile.getCarQuantity() != actualCars) {
+                if (delegationRepository.correctDelegationCounter(delegationId, CAR_QUANTITY, profile.getCarQuantity(), actualCars)) {
+                    corrected++;
+                } else {
+                    skipped++;
+                }
+            }
+            if (profile.getActiveBookings() != actualBookings) {
+                if (delegationRepository.correctDelegationCounter(delegationId, ACTIVE_BOOKINGS, profile.getActiveBookings(), actualBookings)) {
+                    corrected++;
+                } else {
+                    skipped++;
+                }
+            }
+        }
+        System.out.println("DEBUG: Delegation counters reconciled: " + corrected + " corrected, " + skipped
+                + " changed while counting.");
+    }
+
+    private static boolean isActive(Booking booking, LocalDate today) {
+        return booking.getEndDate() != null && !LocalDate.parse(booking.getEndDate()).isBefore(today);
+    }
+}
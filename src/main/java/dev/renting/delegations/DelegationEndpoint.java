@@ -2,13 +2,19 @@ package dev.renting.delegations;
 
 import com.vaadin.flow.server.auth.AnonymousAllowed;
 import com.vaadin.hilla.Endpoint;
+import dev.renting.config.InvalidationEvent;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import reactor.core.publisher.Flux;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
 
 import java.time.LocalDate;
 import java.time.format.DateTimeParseException; // Importar para manejar errores de parseo de fecha
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.stream.Collectors;
@@ -18,37 +24,107 @@ import java.util.stream.Collectors;
 public class DelegationEndpoint {
 
     private final DelegationRepository delegationRepository;
+    private final AvailabilityService availabilityService;
+    private final AvailabilityEventBus availabilityEventBus;
+    private final OccupancyAggregates occupancyAggregates;
+    private final ReservationHoldService reservationHoldService;
+    private final BookingArchive bookingArchive;
+    private final DelegationCounters delegationCounters;
+    private final QuoteEngine quoteEngine;
+    private final DegradedMode degradedMode;
+    private final CatalogSnapshot catalogSnapshot;
+    private final ApplicationEventPublisher eventPublisher;
 
     @Autowired
-    public DelegationEndpoint(DelegationRepository delegationRepository) {
+    public DelegationEndpoint(DelegationRepository delegationRepository, AvailabilityService availabilityService,
+                              AvailabilityEventBus availabilityEventBus, OccupancyAggregates occupancyAggregates,
+                              ReservationHoldService reservationHoldService, BookingArchive bookingArchive,
+                              DelegationCounters delegationCounters, QuoteEngine quoteEngine,
+                              DegradedMode degradedMode, CatalogSnapshot catalogSnapshot,
+                              ApplicationEventPublisher eventPublisher) {
         this.delegationRepository = delegationRepository;
+        this.availabilityService = availabilityService;
+        this.availabilityEventBus = availabilityEventBus;
+        this.occupancyAggregates = occupancyAggregates;
+        this.reservationHoldService = reservationHoldService;
+        this.bookingArchive = bookingArchive;
+        this.delegationCounters = delegationCounters;
+        this.quoteEngine = quoteEngine;
+        this.degradedMode = degradedMode;
+        this.catalogSnapshot = catalogSnapshot;
+        this.eventPublisher = eventPublisher;
     }
 
     // Save Delegation
     public void saveDelegation(Delegation delegation) {
-        delegationRepository.save(delegation);
+        degradedMode.checkWritable();
+        // The counters are maintained by DelegationCounters, so editing a profile leaves them out of the write
+        if ("profile".equals(delegation.getOperation())) {
+            degradedMode.write(() -> delegationRepository.updateDelegationProfile(delegation));
+        } else {
+            degradedMode.write(() -> delegationRepository.save(delegation));
+        }
+        eventPublisher.publishEvent(new InvalidationEvent(ClusterEventRelay.DELEGATION, delegation.getDelegationId()));
     }
 
     // Save Car
     public void saveCar(Car car) {
-        delegationRepository.save(car);
+        degradedMode.checkWritable();
+        // Only a new car changes the delegation's car count
+        if (degradedMode.write(() -> delegationRepository.put(car)) == null) {
+            delegationCounters.carAdded(car.getDelegationId());
+        }
+        eventPublisher.publishEvent(new InvalidationEvent(ClusterEventRelay.CAR, car.getOperation()));
+    }
+
+    /**
+     * Removes a car from a delegation.
+     * @param delegationId The ID of the delegation of the car.
+     * @param carId The unique car id (the car's operation value).
+     * @return true if the car existed and was removed.
+     */
+    public boolean deleteCar(String delegationId, String carId) {
+        degradedMode.checkWritable();
+        Car carToDelete = new Car();
+        carToDelete.setDelegationId(delegationId);
+        carToDelete.setOperation(carId);
+        if (degradedMode.write(() -> delegationRepository.delete(carToDelete)) == null) {
+            return false;
+        }
+        delegationCounters.carRemoved(delegationId);
+        eventPublisher.publishEvent(new InvalidationEvent(ClusterEventRelay.CAR, carId));
+        return true;
     }
 
     /**
      * Saves a new booking. Generates a bookingId and sets the bookingDate if not provided.
      * Assumes the repository can save Booking objects.
+     * A car on hold, even by the same customer, can only be booked through {@link #confirmHold(String)}.
      * @param booking The Booking object to save.
      */
     public void saveBooking(Booking booking) {
+        degradedMode.checkWritable();
         System.out.println("DEBUG: saveBooking called for carId: " + booking.getCarId());
+        // The userId in the request is not authenticated, so it cannot exempt anyone from a hold; holders use confirmHold
+        if (booking.getStartDate() != null && booking.getEndDate() != null
+                && reservationHoldService.isHeld(booking.getCarId(), LocalDate.parse(booking.getStartDate()),
+                        LocalDate.parse(booking.getEndDate()))) {
+            throw new IllegalStateException("Car " + booking.getCarId() + " is temporarily held, confirm the hold to book it.");
+        }
         // Generate a bookingId if it doesn't have one
         if (booking.getBookingId() == null || booking.getBookingId().isEmpty()) {
             booking.setBookingId("BOOKING#" + UUID.randomUUID().toString());
         }
         // Assign the current booking date
         booking.setBookingDate(LocalDate.now().toString());
-        delegationRepository.save(booking); // Assuming the repository can save Bookings
+        // put returns the booking with the same carId and startDate it overwrote, if any
+        Booking replaced = degradedMode.write(() -> delegationRepository.put(booking));
         System.out.println("DEBUG: Booking saved successfully.");
+        // Listeners take the replaced booking out first, so it is not counted twice
+        if (replaced != null) {
+            eventPublisher.publishEvent(new BookingChangedEvent(replaced, BookingChangedEvent.Type.DELETED));
+        }
+        eventPublisher.publishEvent(new BookingChangedEvent(booking, BookingChangedEvent.Type.SAVED));
     }
 
     /**
@@ -58,44 +134,106 @@ public class DelegationEndpoint {
      * @param startDate The startDate of the booking to delete.
      */
     public void deleteBooking(String carId, String startDate) {
+        degradedMode.checkWritable();
         System.out.println("DEBUG: deleteBooking called for carId: " + carId + " and startDate: " + startDate);
         // Create a dummy Booking object with just the primary key for deletion
         Booking bookingToDelete = new Booking();
         bookingToDelete.setCarId(carId);
         bookingToDelete.setStartDate(startDate);
-        delegationRepository.delete(bookingToDelete); // Assuming the repository can delete Booking objects
+        Booking deletedBooking = degradedMode.write(() -> delegationRepository.delete(bookingToDelete));
         System.out.println("DEBUG: Booking deleted successfully.");
+        // Only notify when a booking really existed, otherwise there is nothing to release
+        if (deletedBooking != null) {
+            eventPublisher.publishEvent(new BookingChangedEvent(deletedBooking, BookingChangedEvent.Type.DELETED));
+        }
+    }
+
+    /**
+     * Places a temporary hold on a car while the customer pays. Availability searches
+     * treat the car as taken until the hold is confirmed, released or expires.
+     *
+     * @param carId The unique car id (the car's operation value).
+     * @param delegationId The ID of the delegation of the car.
+     * @param userId The ID of the user placing the hold.
+     * @param startDateStr The start date of the rental period (YYYY-MM-DD format).
+     * @param endDateStr The end date of the rental period (YYYY-MM-DD format).
+     * @return The hold, including its id and expiry time.
+     */
+    public ReservationHold placeHold(String carId, String delegationId, String userId, String startDateStr, String endDateStr) {
+        degradedMode.checkWritable();
+        System.out.println("DEBUG: placeHold called for carId: " + carId + " by user: " + userId);
+        LocalDate startDate;
+        LocalDate endDate;
+        try {
+            startDate = LocalDate.parse(startDateStr);
+            endDate = LocalDate.parse(endDateStr);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date format. Expected YYYY-MM-DD.", e);
+        }
+        // Placing a hold reads the car's bookings, so an outage there stops writes too
+        return degradedMode.write(() -> reservationHoldService.placeHold(carId, delegationId, userId, startDate, endDate));
+    }
+
+    /**
+     * Converts a hold into a booking once the payment has succeeded.
+     * @param holdId The id returned by placeHold.
+     * @return The saved booking.
+     */
+    public Booking confirmHold(String holdId) {
+        degradedMode.checkWritable();
+        System.out.println("DEBUG: confirmHold called for holdId: " + holdId);
+        return degradedMode.write(() -> reservationHoldService.confirmHold(holdId));
+    }
+
+    /**
+     * Releases a hold, for example when the customer cancels the payment.
+     * @param holdId The id returned by placeHold.
+     * @return false if the hold had already expired or been used.
+     */
+    public boolean releaseHold(String holdId) {
+        return reservationHoldService.releaseHold(holdId);
     }
 
     // Get Delegation by keys
     public Delegation getDelegation(String delegationId, String operation) {
-        return delegationRepository.get(delegationId, operation, Delegation.class);
+        return degradedMode.read(() -> delegationRepository.get(delegationId, operation, Delegation.class),
+                () -> catalogSnapshot.getProfiles().stream()
+                        .filter(d -> delegationId.equals(d.getDelegationId()) && operation.equals(d.getOperation()))
+                        .findFirst().orElse(null));
     }
 
     // Get Car by keys
     public Car getCar(String id, String operation) {
-        return delegationRepository.get(id, operation, Car.class);
+        return degradedMode.read(() -> delegationRepository.get(id, operation, Car.class),
+                () -> catalogSnapshot.getCars().stream()
+                        .filter(car -> id.equals(car.getDelegationId()) && operation.equals(car.getOperation()))
+                        .findFirst().orElse(null));
     }
 
     // List Delegations by delegationId
     public List<Delegation> listDelegationsById(String delegationId) {
-        return delegationRepository.listByPartitionKey(delegationId, Delegation.class);
+        return degradedMode.read(() -> delegationRepository.listByPartitionKey(delegationId, Delegation.class),
+                () -> catalogSnapshot.getProfiles().stream()
+                        .filter(d -> delegationId.equals(d.getDelegationId()))
+                        .collect(Collectors.toList()));
     }
 
     // List Cars by id (partition key)
     public List<Car> listCarsById(String id) {
-        return delegationRepository.listByPartitionKey(id, Car.class);
+        return degradedMode.read(() -> delegationRepository.listByPartitionKey(id, Car.class),
+                () -> carsOfDelegationFromSnapshot(id));
     }
 
     // List all cars for all delegations
     public List<Car> getAllCars() {
-        return delegationRepository.listAllCars();
+        return degradedMode.read(delegationRepository::listAllCars, catalogSnapshot::getCars);
     }
 
     // List all delegations with operation = "profile"
     public List<Delegation> getAllProfileDelegations() {
         System.out.println("DEBUG: getAllProfileDelegations called.");
-        List<Delegation> allDelegations = delegationRepository.listAllDelegations();
+        List<Delegation> allDelegations = degradedMode.read(delegationRepository::listAllDelegations,
+                catalogSnapshot::getProfiles);
         System.out.println("DEBUG: Total delegations from repo: " + allDelegations.size());
         List<Delegation> profileDelegations = allDelegations.stream()
                 .filter(d -> "profile".equals(d.getOperation()))
@@ -130,6 +268,12 @@ public class DelegationEndpoint {
         }
 
 
+        return degradedMode.read(() -> findAvailableCars(delegationId, queryStartDate, queryEndDate, isVintageMode),
+                () -> availableCarsFromSnapshot(delegationId, queryStartDate, queryEndDate, isVintageMode));
+    }
+
+    private List<Car> findAvailableCars(String delegationId, LocalDate queryStartDate, LocalDate queryEndDate,
+                                        boolean isVintageMode) {
         // 1. Get all cars for that delegation
         List<Car> carsInDelegation = delegationRepository.listAllCars().stream()
                 .filter(car -> car.getDelegationId() != null && car.getDelegationId().equals(delegationId))
@@ -160,18 +304,7 @@ public class DelegationEndpoint {
             }
 
             System.out.println("DEBUG: Checking bookings for car ID: " + carUniqueId);
-            List<Booking> bookingsForCar = delegationRepository.listByPartitionKey(carUniqueId, Booking.class);
-            System.out.println("DEBUG: Number of bookings found for car " + carUniqueId + ": " + bookingsForCar.size());
-
-            boolean isBookedDuringPeriod = false;
-            for (Booking booking : bookingsForCar) {
-                System.out.println("DEBUG: Checking booking " + booking.getBookingId() + " (Car: " + booking.getCarId() + ") from " + booking.getStartDate() + " to " + booking.getEndDate());
-                if (booking.overlapsWith(queryStartDate, queryEndDate)) {
-                    isBookedDuringPeriod = true;
-                    System.out.println("DEBUG: Car " + carUniqueId + " is booked during the requested period by booking " + booking.getBookingId());
-                    break; // No need to check more bookings for this car
-                }
-            }
+            boolean isBookedDuringPeriod = !availabilityService.isCarAvailable(carUniqueId, queryStartDate, queryEndDate);
 
             // Only add the car to available list if it's not booked during the period
             if (!isBookedDuringPeriod) {
@@ -183,15 +316,219 @@ public class DelegationEndpoint {
         return availableCars;
     }
 
+    /**
+     * Same search as {@link #getAvailableCars}, with the price of each car for the period,
+     * so the results can be shown with their totals without further calls.
+     *
+     * @return The available cars with their quotes.
+     */
+    public List<CarQuote> getAvailableCarsQuoted(String delegationId, String startDateStr, String endDateStr,
+                                                 boolean isVintageMode) {
+        List<Car> availableCars = getAvailableCars(delegationId, startDateStr, endDateStr, isVintageMode);
+        return quoteEngine.quote(availableCars, LocalDate.parse(startDateStr), LocalDate.parse(endDateStr));
+    }
+
+    /**
+     * Prices several cars of a delegation for the same rental period. Prices are read from
+     * the stored cars; unknown car IDs are left out.
+     *
+     * @param delegationId The ID of the delegation holding the cars.
+     * @param carIds The IDs (operation) of the cars.
+     * @param startDateStr The start date of the rental period (YYYY-MM-DD format).
+     * @param endDateStr The end date of the rental period (YYYY-MM-DD format).
+     * @return One quote per known car, in the order of carIds.
+     */
+    public List<CarQuote> getQuotes(String delegationId, List<String> carIds, String startDateStr, String endDateStr) {
+        LocalDate queryStartDate;
+        LocalDate queryEndDate;
+        try {
+            queryStartDate = LocalDate.parse(startDateStr);
+            queryEndDate = LocalDate.parse(endDateStr);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date format. Expected YYYY-MM-DD.", e);
+        }
+        // One query for the whole delegation instead of a read per car
+        Map<String, Car> carsById = new HashMap<>();
+        for (Car car : delegationRepository.listByPartitionKey(delegationId, Car.class)) {
+            carsById.put(car.getOperation(), car);
+        }
+        List<Car> cars = new ArrayList<>(carIds.size());
+        for (String carId : carIds) {
+            Car car = carsById.get(carId);
+            if (car != null) {
+                cars.add(car);
+            }
+        }
+        return quoteEngine.quote(cars, queryStartDate, queryEndDate);
+    }
+
+    /**
+     * Searches for available cars in every delegation within a radius of a location.
+     * The delegations are checked in parallel and the search stops as soon as
+     * {@code limit} cars are confirmed free.
+     *
+     * @param lat Latitude of the search location.
+     * @param lon Longitude of the search location.
+     * @param radiusKm Search radius in kilometres.
+     * @param startDateStr The start date of the rental period (YYYY-MM-DD format).
+     * @param endDateStr The end date of the rental period (YYYY-MM-DD format).
+     * @param isVintageMode True if vintage cars should be shown, false for modern cars.
+     * @param limit Maximum number of cars to return (1-100, defaults to 20 when not positive).
+     * @return Available cars ordered by distance and then price.
+     */
+    public List<NearbyCar> getAvailableCarsNearby(double lat, double lon, double radiusKm, String startDateStr,
+                                                  String endDateStr, boolean isVintageMode, int limit) {
+        System.out.println("DEBUG: getAvailableCarsNearby called for lat: " + lat + ", lon: " + lon + ", radiusKm: " + radiusKm);
+        if (radiusKm <= 0) {
+            throw new IllegalArgumentException("Radius must be greater than zero.");
+        }
+        LocalDate queryStartDate;
+        LocalDate queryEndDate;
+        try {
+            queryStartDate = LocalDate.parse(startDateStr);
+            queryEndDate = LocalDate.parse(endDateStr);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date format. Expected YYYY-MM-DD.", e);
+        }
+        int cappedLimit = limit <= 0 ? 20 : Math.min(limit, 100);
+
+        List<NearbyCar> nearbyCars = degradedMode.read(
+                () -> availabilityService.findAvailableCarsNearby(
+                        lat, lon, radiusKm, queryStartDate, queryEndDate, isVintageMode, cappedLimit),
+                () -> availableCarsNearbyFromSnapshot(lat, lon, radiusKm, queryStartDate, queryEndDate, isVintageMode,
+                        cappedLimit));
+        System.out.println("DEBUG: Nearby available cars found: " + nearbyCars.size());
+        return nearbyCars;
+    }
+
+    /**
+     * Subscribes to availability changes of the delegation's cars for a date window.
+     * An event is pushed whenever a booking overlapping the window is saved or deleted,
+     * so clients can update their results without searching again.
+     *
+     * @param delegationId The ID of the delegation.
+     * @param startDateStr The start date of the window (YYYY-MM-DD format).
+     * @param endDateStr The end date of the window (YYYY-MM-DD format).
+     * @return A stream of availability deltas.
+     */
+    public Flux<AvailabilityEvent> subscribeToAvailability(String delegationId, String startDateStr, String endDateStr) {
+        LocalDate queryStartDate;
+        LocalDate queryEndDate;
+        try {
+            queryStartDate = LocalDate.parse(startDateStr);
+            queryEndDate = LocalDate.parse(endDateStr);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date format. Expected YYYY-MM-DD.", e);
+        }
+        return availabilityEventBus.subscribe(delegationId, queryStartDate, queryEndDate);
+    }
+
+    /**
+     * Returns cars booked, utilization and revenue per day for a delegation.
+     * Served from the incrementally maintained aggregates, never from the Bookings table.
+     *
+     * @param delegationId The ID of the delegation.
+     * @param startDateStr First day of the report (YYYY-MM-DD format).
+     * @param endDateStr Last day of the report (YYYY-MM-DD format).
+     * @return The occupancy of every day in the range.
+     */
+    public DelegationOccupancy getOccupancy(String delegationId, String startDateStr, String endDateStr) {
+        try {
+            return occupancyAggregates.getOccupancy(delegationId, LocalDate.parse(startDateStr), LocalDate.parse(endDateStr));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date format. Expected YYYY-MM-DD.", e);
+        }
+    }
+
+    /**
+     * Returns the bookings overlapping a period, including those already moved to the archive.
+     *
+     * @param delegationId The ID of the delegation, or null for all delegations.
+     * @param startDateStr First day of the period (YYYY-MM-DD format).
+     * @param endDateStr Last day of the period (YYYY-MM-DD format).
+     * @return The live and archived bookings, sorted by start date.
+     */
+    public List<Booking> getBookingHistory(String delegationId, String startDateStr, String endDateStr) {
+        try {
+            return bookingArchive.findBookings(LocalDate.parse(startDateStr), LocalDate.parse(endDateStr), delegationId);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid date format. Expected YYYY-MM-DD.", e);
+        }
+    }
+
+    /**
+     * Lists the bookings of a delegation a page at a time, by start date, from the
+     * delegationId index of the Bookings table.
+     *
+     * @param delegationId The ID of the delegation.
+     * @param cursor The nextCursor of the previous page, or null for the first page.
+     * @param limit Maximum bookings in the page (1 to 100, 20 if not positive).
+     * @return The page, with the cursor of the next one.
+     */
+    public BookingPage getBookingsByDelegation(String delegationId, String cursor, int limit) {
+        return delegationRepository.queryBookingsByIndex(Booking.DELEGATION_INDEX, delegationId, cursor, BookingPage.limit(limit));
+    }
+
+    // Snapshot versions of the searches above, used by DegradedMode while DynamoDB is failing
+
+    private List<Car> carsOfDelegationFromSnapshot(String delegationId) {
+        return catalogSnapshot.getCars().stream()
+                .filter(car -> delegationId.equals(car.getDelegationId()))
+                .collect(Collectors.toList());
+    }
+
+    private boolean isAvailableInSnapshot(Car car, LocalDate startDate, LocalDate endDate) {
+        String carId = car.getOperation();
+        return carId != null && !carId.isEmpty()
+                && !reservationHoldService.isHeld(carId, startDate, endDate)
+                && !catalogSnapshot.hasOverlappingBooking(carId, startDate, endDate);
+    }
+
+    private List<Car> availableCarsFromSnapshot(String delegationId, LocalDate startDate, LocalDate endDate,
+                                                boolean isVintageMode) {
+        return carsOfDelegationFromSnapshot(delegationId).stream()
+                .filter(car -> isVintageMode == (car.getYear() < 2000))
+                .filter(car -> isAvailableInSnapshot(car, startDate, endDate))
+                .collect(Collectors.toList());
+    }
+
+    private List<NearbyCar> availableCarsNearbyFromSnapshot(double lat, double lon, double radiusKm, LocalDate startDate,
+                                                            LocalDate endDate, boolean isVintageMode, int limit) {
+        Map<String, NearbyCar> delegationsInRange = new HashMap<>();
+        for (Delegation delegation : catalogSnapshot.getProfiles()) {
+            double distance = AvailabilityService.distanceKm(lat, lon, delegation.getLat(), delegation.getLongVal());
+            if (delegation.getDelegationId() != null && distance <= radiusKm) {
+                delegationsInRange.put(delegation.getDelegationId(), new NearbyCar(null, delegation, distance));
+            }
+        }
+        return catalogSnapshot.getCars().stream()
+                .filter(car -> delegationsInRange.containsKey(car.getDelegationId()))
+                .filter(car -> car.getOperation() != null && car.getOperation().startsWith("car"))
+                .filter(car -> isVintageMode == (car.getYear() < 2000))
+                .map(car -> {
+                    NearbyCar entry = delegationsInRange.get(car.getDelegationId());
+                    return new NearbyCar(car, entry.getDelegation(), entry.getDistanceKm());
+                })
+                .sorted(Comparator.comparingDouble(NearbyCar::getDistanceKm)
+                        .thenComparingInt(candidate -> candidate.getCar().getPrice()))
+                .filter(candidate -> isAvailableInSnapshot(candidate.getCar(), startDate, endDate))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
     /**
      * Lists all bookings from the Bookings table.
      * Assumes the repository can list all items of type Booking.
+     * While in degraded mode the list comes from the catalog snapshot, which only holds
+     * current and upcoming bookings plus those that ended in the last
+     * {@code renting.snapshot.booking-days} days; older bookings are missing from it.
      * @return A list of all bookings.
      */
     public List<Booking> getAllBookings() {
         System.out.println("DEBUG: getAllBookings called.");
         // Assuming delegationRepository.listAllItems(Booking.class) can scan the Bookings table
-        List<Booking> allBookings = delegationRepository.listAllItems(Booking.class);
+        List<Booking> allBookings = degradedMode.read(() -> delegationRepository.listAllItems(Booking.class),
+                catalogSnapshot::getBookings);
         System.out.println("DEBUG: Total bookings found: " + allBookings.size());
         return allBookings;
     }
@@ -0,0 +1,74 @@
+package dev.renting.delegations;
+
+/**
+ * Day-by-day occupancy of one delegation. Index 0 of every array is {@code startDate}.
+ */
+public class DelegationOccupancy {
+    private String delegationId;
+    private String startDate;
+    private String endDate;
+    private int carQuantity;
+    private int[] carsBooked;
+    private double[] utilizationPercent;
+    private long[] revenue;
+
+    // Constructor vacío requerido por Hilla para serializar el objeto
+    public DelegationOccupancy() {}
+
+    public String getDelegationId() {
+        return delegationId;
+    }
+
+    public void setDelegationId(String delegationId) {
+        this.delegationId = delegationId;
+    }
+
+    public String getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(String startDate) {
+        this.startDate = startDate;
+    }
+
+    public String getEndDate() {
+        return endDate;
+    }
+
+    public void setEndDate(String endDate) {
+        this.endDate = endDate;
+    }
+
+    public int getCarQuantity() {
+        return carQuantity;
+    }
+
+    public void setCarQuantity(int carQuantity) {
+        this.carQuantity = carQuantity;
+    }
+
+    public int[] getCarsBooked() {
+        return carsBooked;
+    }
+
+    public void setCarsBooked(int[] carsBooked) {
+        this.carsBooked = carsBooked;
+    }
+
+    public double[] getUtilizationPercent() {
+        return utilizationPercent;
+    }
+
+    public void setUtilizationPercent(double[] utilizationPercent) {
+        this.utilizationPercent = utilizationPercent;
+    }
+
+    // Revenue per day in euros, from the daily Car.price of every booked car
+    public long[] getRevenue() {
+        return revenue;
+    }
+
+    public void setRevenue(long[] revenue) {
+        this.revenue = revenue;
+    }
+}
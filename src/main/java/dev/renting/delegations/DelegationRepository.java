@@ -6,6 +6,15 @@ public interface DelegationRepository {
 
     <T> void save(T item);
 
+    // Saves the item and returns the item it replaced, or null if it is new
+    <T> T put(T item);
+
+    // Saves the item only if no item with the same key exists; returns false otherwise
+    <T> boolean saveIfAbsent(T item, String partitionKeyAttribute);
+
+    // Deletes the item with the key of the given one and returns the deleted item, or null if none existed
+    <T> T delete(T keyItem);
+
     <T> T get(String partitionKey, String sortKey, Class<T> clazz);
 
     <T> List<T> listByPartitionKey(String partitionKey, Class<T> clazz);
@@ -15,4 +24,22 @@ public interface DelegationRepository {
     List<Delegation> listAllDelegations();
 
     <T> List<T> listAllItems(Class<T> clazz);
+
+    // Lazily scans the table of the class a page at a time, starting after the given key (null to start at the beginning)
+    <T> Iterable<T> scanFrom(Class<T> clazz, String exclusivePartitionKey, String exclusiveSortKey, int pageSize);
+
+    // Writes every attribute of the delegation profile except the counters, creating it if needed
+    void updateDelegationProfile(Delegation delegation);
+
+    // Atomically adds delta to a numeric attribute of a delegation profile; false if the profile does not exist
+    boolean addToDelegationCounter(String delegationId, String attribute, long delta);
+
+    // Sets a counter of a delegation profile to actual, only if it still holds expected; false if it changed meanwhile
+    boolean correctDelegationCounter(String delegationId, String attribute, long expected, long actual);
+
+    // One page of bookings from a secondary index of Bookings, by startDate; cursor is null for the first page
+    BookingPage queryBookingsByIndex(String indexName, String partitionValue, String cursor, int limit);
+
+    // Bookings whose endDate (YYYY-MM-DD) is before the given date
+    List<Booking> listBookingsEndingBefore(String date);
 }
@@ -1,13 +1,24 @@
 package dev.renting.delegations;
 
+import dev.renting.config.HedgedReads;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 import software.amazon.awssdk.enhanced.dynamodb.*;
+import software.amazon.awssdk.enhanced.dynamodb.model.Page;
+import software.amazon.awssdk.enhanced.dynamodb.model.PutItemEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.enhanced.dynamodb.model.QueryEnhancedRequest;
 import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.DynamoDbClient;
 import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+import software.amazon.awssdk.services.dynamodb.model.ConditionalCheckFailedException;
+import software.amazon.awssdk.services.dynamodb.model.DynamoDbException;
+import software.amazon.awssdk.services.dynamodb.model.ReturnValue;
+import software.amazon.awssdk.services.dynamodb.model.UpdateItemRequest;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -16,12 +27,17 @@ import java.util.Map;
 public class DelegationRepositoryImpl implements DelegationRepository {
 
     private final DynamoDbEnhancedClient enhancedClient;
+    private final DynamoDbClient dynamoDbClient;
+    private final HedgedReads hedgedReads;
     private final String delegationsTableName = "Delegations"; // Nombre de la tabla principal de Delegaciones
     private final String bookingsTableName = "Bookings"; // Nombre de la tabla de Reservas
 
     @Autowired
-    public DelegationRepositoryImpl(DynamoDbEnhancedClient enhancedClient) {
+    public DelegationRepositoryImpl(DynamoDbEnhancedClient enhancedClient, DynamoDbClient dynamoDbClient,
+                                    HedgedReads hedgedReads) {
         this.enhancedClient = enhancedClient;
+        this.dynamoDbClient = dynamoDbClient;
+        this.hedgedReads = hedgedReads;
     }
 
     // Helper method to get the correct table name based on the class
@@ -44,6 +60,49 @@ public class DelegationRepositoryImpl implements DelegationRepository {
         table.putItem(item);
     }
 
+    @Override
+    public <T> T put(T item) {
+        Class<T> clazz = (Class<T>) item.getClass();
+        DynamoDbTable<T> table = enhancedClient.table(getTableNameForClass(clazz), TableSchema.fromBean(clazz));
+        return table.putItemWithResponse(PutItemEnhancedRequest.builder(clazz)
+                        .item(item)
+                        .returnValues(ReturnValue.ALL_OLD)
+                        .build())
+                .attributes();
+    }
+
+    @Override
+    public <T> boolean saveIfAbsent(T item, String partitionKeyAttribute) {
+        String actualTableName = getTableNameForClass((Class<T>) item.getClass());
+        Class<T> clazz = (Class<T>) item.getClass();
+        DynamoDbTable<T> table = enhancedClient.table(actualTableName, TableSchema.fromBean(clazz));
+        // The condition is evaluated by DynamoDB against the item with the same key, so it is atomic
+        Expression notExists = Expression.builder()
+                .expression("attribute_not_exists(#pk)")
+                .putExpressionName("#pk", partitionKeyAttribute)
+                .build();
+        try {
+            table.putItem(PutItemEnhancedRequest.builder(clazz)
+                    .item(item)
+                    .conditionExpression(notExists)
+                    .build());
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public <T> T delete(T keyItem) {
+        String actualTableName = getTableNameForClass((Class<T>) keyItem.getClass());
+        DynamoDbTable<T> table =
+                enhancedClient.table(
+                        actualTableName,
+                        TableSchema.fromBean((Class<T>) keyItem.getClass()));
+        // deleteItem returns the old item, so callers can tell whether something was removed
+        return table.deleteItem(keyItem);
+    }
+
     @Override
     public <T> T get(String partitionKey, String sortKey, Class<T> clazz) {
         // Usa el nombre de tabla correcto para la clase
@@ -53,7 +112,8 @@ public class DelegationRepositoryImpl implements DelegationRepository {
                 .partitionValue(partitionKey)
                 .sortValue(sortKey)
                 .build();
-        return table.getItem(key);
+        // Point reads sit on the availability search path, so slow ones are hedged
+        return hedgedReads.read("GetItem", () -> table.getItem(key));
     }
 
     @Override
@@ -62,11 +122,13 @@ public class DelegationRepositoryImpl implements DelegationRepository {
         String actualTableName = getTableNameForClass(clazz);
         DynamoDbTable<T> table = enhancedClient.table(actualTableName, TableSchema.fromBean(clazz));
         QueryConditional queryConditional = QueryConditional.keyEqualTo(k -> k.partitionValue(partitionKey));
-        List<T> items = new ArrayList<>();
         // IMPORTANT: Avoid orderBy() in Firestore queries as it can lead to runtime errors
         // due to missing indexes. If sorting is needed, fetch all data and sort in memory.
-        table.query(queryConditional).items().forEach(items::add);
-        return items;
+        return hedgedReads.read("Query", () -> {
+            List<T> items = new ArrayList<>();
+            table.query(queryConditional).items().forEach(items::add);
+            return items;
+        });
     }
 
     @Override
@@ -120,4 +182,167 @@ public class DelegationRepositoryImpl implements DelegationRepository {
         table.scan(ScanEnhancedRequest.builder().build()).items().forEach(items::add);
         return items;
     }
+
+    @Override
+    public List<Booking> listBookingsEndingBefore(String date) {
+        DynamoDbTable<Booking> table = enhancedClient.table(getTableNameForClass(Booking.class), TableSchema.fromBean(Booking.class));
+        List<Booking> bookings = new ArrayList<>();
+        Map<String, AttributeValue> expressionValues = new HashMap<>();
+        expressionValues.put(":date", AttributeValue.builder().s(date).build());
+        // ISO dates compare correctly as strings
+        Expression filterExpression = Expression.builder()
+                .expression("endDate < :date")
+                .expressionValues(expressionValues)
+                .build();
+        ScanEnhancedRequest scanRequest = ScanEnhancedRequest.builder()
+                .filterExpression(filterExpression)
+                .build();
+        table.scan(scanRequest).items().forEach(bookings::add);
+        return bookings;
+    }
+
+    @Override
+    public <T> Iterable<T> scanFrom(Class<T> clazz, String exclusivePartitionKey, String exclusiveSortKey, int pageSize) {
+        TableSchema<T> schema = TableSchema.fromBean(clazz);
+        DynamoDbTable<T> table = enhancedClient.table(getTableNameForClass(clazz), schema);
+        ScanEnhancedRequest.Builder scanRequest = ScanEnhancedRequest.builder().limit(pageSize);
+        if (exclusivePartitionKey != null) {
+            Map<String, AttributeValue> startKey = new HashMap<>();
+            startKey.put(schema.tableMetadata().primaryPartitionKey(), AttributeValue.builder().s(exclusivePartitionKey).build());
+            schema.tableMetadata().primarySortKey().ifPresent(
+                    sortKey -> startKey.put(sortKey, AttributeValue.builder().s(exclusiveSortKey).build()));
+            scanRequest.exclusiveStartKey(startKey);
+        }
+        // The next page is only requested when iteration reaches it
+        return table.scan(scanRequest.build()).items();
+    }
+
+    @Override
+    public BookingPage queryBookingsByIndex(String indexName, String partitionValue, String cursor, int limit) {
+        TableSchema<Booking> schema = TableSchema.fromBean(Booking.class);
+        DynamoDbIndex<Booking> index = enhancedClient.table(bookingsTableName, schema).index(indexName);
+        String indexPartitionKey = schema.tableMetadata().indexPartitionKey(indexName);
+        QueryEnhancedRequest.Builder request = QueryEnhancedRequest.builder()
+                .queryConditional(QueryConditional.keyEqualTo(k -> k.partitionValue(partitionValue)))
+                .limit(limit);
+        if (cursor != null && !cursor.isBlank()) {
+            request.exclusiveStartKey(decodeBookingCursor(cursor, indexPartitionKey, partitionValue));
+        }
+        Page<Booking> page;
+        try {
+            // Only the first page of the query is read; the cursor resumes from its last key
+            page = hedgedReads.read("Query", () -> index.query(request.build()).iterator().next());
+        } catch (DynamoDbException e) {
+            // A missing index is reported as a validation error, not as a missing resource
+            if (e.getMessage() == null || !e.getMessage().contains("specified index")) {
+                throw e;
+            }
+            throw new IllegalStateException("Index " + indexName + " does not exist on table " + bookingsTableName
+                    + ", see the README to create it.", e);
+        }
+        Map<String, AttributeValue> lastKey = page.lastEvaluatedKey();
+        String nextCursor = lastKey == null || lastKey.isEmpty() ? null : encodeBookingCursor(lastKey);
+        return new BookingPage(page.items(), nextCursor);
+    }
+
+    // The cursor only carries the table key; the index key is the queried value and the same startDate
+    private static String encodeBookingCursor(Map<String, AttributeValue> lastKey) {
+        String key = lastKey.get("carId").s() + "\n" + lastKey.get("startDate").s();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, AttributeValue> decodeBookingCursor(String cursor, String indexPartitionKey,
+                                                                   String partitionValue) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\n", -1);
+        } catch (IllegalArgumentException e) {
+            parts = new String[0];
+        }
+        if (parts.length != 2 || parts[0].isEmpty() || parts[1].isEmpty()) {
+            throw new IllegalArgumentException("Invalid booking cursor.");
+        }
+        Map<String, AttributeValue> startKey = new HashMap<>();
+        startKey.put("carId", AttributeValue.builder().s(parts[0]).build());
+        startKey.put("startDate", AttributeValue.builder().s(parts[1]).build());
+        startKey.put(indexPartitionKey, AttributeValue.builder().s(partitionValue).build());
+        return startKey;
+    }
+
+    @Override
+    public void updateDelegationProfile(Delegation delegation) {
+        Map<String, AttributeValue> item = new HashMap<>(TableSchema.fromBean(Delegation.class).itemToMap(delegation, false));
+        // The counters only change through ADD or a conditional correction, never through an edit
+        item.keySet().removeAll(List.of("delegationId", "operation",
+                DelegationCounters.CAR_QUANTITY, DelegationCounters.ACTIVE_BOOKINGS));
+        Map<String, String> names = new HashMap<>();
+        Map<String, AttributeValue> values = new HashMap<>();
+        List<String> set = new ArrayList<>();
+        List<String> remove = new ArrayList<>();
+        for (Map.Entry<String, AttributeValue> attribute : item.entrySet()) {
+            String name = "#a" + names.size();
+            names.put(name, attribute.getKey());
+            if (Boolean.TRUE.equals(attribute.getValue().nul())) {
+                remove.add(name); // A put would not store a null field either
+            } else {
+                values.put(":v" + values.size(), attribute.getValue());
+                set.add(name + " = :v" + (values.size() - 1));
+            }
+        }
+        String update = (set.isEmpty() ? "" : "SET " + String.join(", ", set))
+                + (remove.isEmpty() ? "" : " REMOVE " + String.join(", ", remove));
+        dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                .tableName(delegationsTableName)
+                .key(profileKey(delegation.getDelegationId()))
+                .updateExpression(update.trim())
+                .expressionAttributeNames(names)
+                .expressionAttributeValues(values.isEmpty() ? null : values)
+                .build());
+    }
+
+    @Override
+    public boolean addToDelegationCounter(String delegationId, String attribute, long delta) {
+        try {
+            // ADD is applied by DynamoDB itself, so concurrent updates never overwrite each other
+            dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                    .tableName(delegationsTableName)
+                    .key(profileKey(delegationId))
+                    .updateExpression("ADD #counter :delta")
+                    .conditionExpression("attribute_exists(delegationId)")
+                    .expressionAttributeNames(Map.of("#counter", attribute))
+                    .expressionAttributeValues(Map.of(":delta", AttributeValue.builder().n(Long.toString(delta)).build()))
+                    .build());
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean correctDelegationCounter(String delegationId, String attribute, long expected, long actual) {
+        String condition = expected == 0
+                ? "attribute_exists(delegationId) AND (attribute_not_exists(#counter) OR #counter = :expected)"
+                : "#counter = :expected";
+        try {
+            dynamoDbClient.updateItem(UpdateItemRequest.builder()
+                    .tableName(delegationsTableName)
+                    .key(profileKey(delegationId))
+                    .updateExpression("SET #counter = :actual")
+                    .conditionExpression(condition)
+                    .expressionAttributeNames(Map.of("#counter", attribute))
+                    .expressionAttributeValues(Map.of(
+                            ":expected", AttributeValue.builder().n(Long.toString(expected)).build(),
+                            ":actual", AttributeValue.builder().n(Long.toString(actual)).build()))
+                    .build());
+            return true;
+        } catch (ConditionalCheckFailedException e) {
+            return false;
+        }
+    }
+
+    private static Map<String, AttributeValue> profileKey(String delegationId) {
+        return Map.of(
+                "delegationId", AttributeValue.builder().s(delegationId).build(),
+                "operation", AttributeValue.builder().s("profile").build());
+    }
 }
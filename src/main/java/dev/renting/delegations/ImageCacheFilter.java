@@ -0,0 +1,80 @@
+package dev.renting.delegations;
+
+import dev.renting.config.StaticAssetDelivery;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Serves the images of the {@link ImageService} manifest under /images with a strong
+ * ETag (the content hash) and long-lived immutable cache headers, answering
+ * {@code If-None-Match} revalidations with 304 so repeat visits transfer no image bytes.
+ * A {@code w} parameter (e.g. {@code /images/Renault_5.webp?w=320}) selects a resized
+ * variant. Requests for names outside the manifest continue down the normal chain.
+ * The bytes, range requests and conditional requests are handled by {@link StaticAssetDelivery}.
+ */
+@Component
+public class ImageCacheFilter extends OncePerRequestFilter {
+
+    static final String IMAGES_PATH = "/images/";
+
+    private final ImageService imageService;
+    private final StaticAssetDelivery delivery;
+    private final String cacheControl;
+
+    @Autowired
+    public ImageCacheFilter(ImageService imageService, StaticAssetDelivery delivery,
+                            @Value("${renting.images.max-age-seconds:31536000}") long maxAgeSeconds) {
+        this.imageService = imageService;
+        this.delivery = delivery;
+        this.cacheControl = "public, max-age=" + maxAgeSeconds + ", immutable";
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String method = request.getMethod();
+        return !("GET".equals(method) || "HEAD".equals(method))
+                || !request.getRequestURI().startsWith(request.getContextPath() + IMAGES_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String filename = request.getRequestURI().substring(request.getContextPath().length() + IMAGES_PATH.length());
+        CarImage image = imageService.findImage(filename);
+        Resource resource = imageService.findResource(filename);
+        if (image == null || resource == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        ImageService.Variant variant = null;
+        String requestedWidth = request.getParameter("w");
+        if (requestedWidth != null) {
+            try {
+                variant = imageService.getVariant(filename, Integer.parseInt(requestedWidth));
+            } catch (NumberFormatException e) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid width");
+                return;
+            } catch (IOException e) {
+                // Fall back to the original image rather than failing the page
+                System.err.println("WARNING: Could not produce variant of " + filename + ": " + e.getMessage());
+            }
+        }
+        if (variant != null) {
+            delivery.serve(request, response, variant.path, variant.contentType, null, variant.etag, cacheControl);
+        } else {
+            Path original = delivery.materialize("images/" + image.getSha256() + "-" + filename, resource);
+            delivery.serve(request, response, original, image.getContentType(), null, image.etag(), cacheControl);
+        }
+    }
+}
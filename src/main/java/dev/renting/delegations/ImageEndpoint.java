@@ -2,25 +2,33 @@ package dev.renting.delegations;
 
 import com.vaadin.flow.server.auth.AnonymousAllowed;
 import com.vaadin.hilla.Endpoint;
-import java.io.File;
-import java.util.Arrays;
+import org.springframework.beans.factory.annotation.Autowired;
+
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Endpoint
 @AnonymousAllowed
 public class ImageEndpoint {
 
+    private final ImageService imageService;
+
+    @Autowired
+    public ImageEndpoint(ImageService imageService) {
+        this.imageService = imageService;
+    }
+
     public List<String> getCarImageFilenames() {
-        // Path to the images directory in src/main/resources/META-INF/resources/images/
-        File imagesDir = new File("src/main/resources/META-INF/resources/images");
-        if (!imagesDir.exists() || !imagesDir.isDirectory()) {
-            return List.of();
-        }
-
-        // List all .webp files and return their names
-        return Arrays.stream(imagesDir.listFiles((dir, name) -> name.endsWith(".webp")))
-                .map(File::getName)
-                .collect(Collectors.toList());
+        // Served from the manifest built at startup, so it also works inside the packaged jar
+        return imageService.getCarImageFilenames();
+    }
+
+    // Full manifest: names, sizes, content hashes and car make/model
+    public List<CarImage> getCarImages() {
+        return imageService.getImages();
+    }
+
+    // srcset value with the resized variants of an image, e.g. for <img srcset=...>
+    public String getCarImageSrcset(String filename) {
+        return imageService.getSrcset(filename);
     }
-}
\ No newline at end of file
+}
@@ -1,4 +1,343 @@
 package dev.renting.delegations;
 
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Catalog of the images bundled under META-INF/resources/images.
+ *
+ * The manifest (names, sizes, dimensions, content hashes and car make/model) is built once
+ * at startup from the classpath, so it works the same from the IDE and from the packaged
+ * jar, and requests never touch the filesystem to list images.
+ *
+ * It also produces smaller variants of each image for the catalog cards. Variants are
+ * generated on first use (or at startup when prebuilding is enabled), stored in a local
+ * disk cache keyed by content hash and width, and concurrent requests for the same
+ * variant share a single generation.
+ */
+@Service
 public class ImageService {
+
+    static final String IMAGES_LOCATION = "classpath*:META-INF/resources/images/*";
+    // Widths we generate; a requested width is rounded up to one of these
+    static final int[] VARIANT_WIDTHS = {320, 640, 1280};
+    private static final float JPEG_QUALITY = 0.82f;
+
+    private final Path variantCacheDir;
+    private final boolean prebuildVariants;
+
+    private Map<String, CarImage> imagesByName = Map.of();
+    private Map<String, Resource> resourcesByName = Map.of();
+    private final Map<String, CompletableFuture<Variant>> variantsInProgress = new ConcurrentHashMap<>();
+
+    public ImageService(@Value("${renting.images.variant-cache-dir:data/image-variants}") String variantCacheDir,
+                        @Value("${renting.images.prebuild-variants:false}") boolean prebuildVariants) {
+        this.variantCacheDir = Path.of(variantCacheDir);
+        this.prebuildVariants = prebuildVariants;
+    }
+
+    /**
+     * A resized copy of an image in the disk cache.
+     */
+    static final class Variant {
+        final Path path;
+        final String contentType;
+        final String etag;
+        final long size;
+
+        Variant(Path path, String contentType, String etag, long size) {
+            this.path = path;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.size = size;
+        }
+    }
+
+    @PostConstruct
+    public void buildManifest() throws IOException {
+        // Register the WebP reader with the class loader of the running application
+        ImageIO.scanForPlugins();
+        Map<String, CarImage> images = new TreeMap<>();
+        Map<String, Resource> resources = new TreeMap<>();
+        for (Resource resource : new PathMatchingResourcePatternResolver().getResources(IMAGES_LOCATION)) {
+            String filename = resource.getFilename();
+            if (filename == null || !resource.isReadable()) {
+                continue;
+            }
+            CarImage image = new CarImage();
+            image.setFilename(filename);
+            image.setContentType(contentTypeOf(filename));
+            hashContent(resource, image);
+            readDimensions(resource, image);
+            // Car pictures are named Make_Model.webp, e.g. Citroen_Dyane.webp or SEAT_1430.webp
+            if (filename.endsWith(".webp") && filename.indexOf('_') > 0) {
+                String baseName = filename.substring(0, filename.length() - ".webp".length());
+                int separator = baseName.indexOf('_');
+                image.setMake(baseName.substring(0, separator));
+                image.setModel(baseName.substring(separator + 1).replace('_', ' '));
+            }
+            images.put(filename, image);
+            resources.put(filename, resource);
+        }
+        imagesByName = Collections.unmodifiableMap(images);
+        resourcesByName = Collections.unmodifiableMap(resources);
+        System.out.println("DEBUG: Image manifest built with " + images.size() + " images.");
+    }
+
+    public List<CarImage> getImages() {
+        return new ArrayList<>(imagesByName.values());
+    }
+
+    public List<String> getCarImageFilenames() {
+        return imagesByName.keySet().stream()
+                .filter(name -> name.endsWith(".webp"))
+                .toList();
+    }
+
+    public CarImage findImage(String filename) {
+        return imagesByName.get(filename);
+    }
+
+    Resource findResource(String filename) {
+        return resourcesByName.get(filename);
+    }
+
+    /**
+     * Builds a srcset attribute value with the variants of an image plus the original.
+     * @return null if the image is not in the manifest.
+     */
+    public String getSrcset(String filename) {
+        CarImage image = findImage(filename);
+        if (image == null) {
+            return null;
+        }
+        StringBuilder srcset = new StringBuilder();
+        for (int width : VARIANT_WIDTHS) {
+            if (width < image.getWidth()) {
+                srcset.append(ImageCacheFilter.IMAGES_PATH).append(filename)
+                        .append("?w=").append(width).append(' ').append(width).append("w, ");
+            }
+        }
+        srcset.append(ImageCacheFilter.IMAGES_PATH).append(filename);
+        if (image.getWidth() > 0) {
+            srcset.append(' ').append(image.getWidth()).append('w');
+        }
+        return srcset.toString();
+    }
+
+    /**
+     * Returns the variant of an image for the requested width, generating it if needed.
+     * @return null if the original is already narrow enough or cannot be decoded.
+     */
+    Variant getVariant(String filename, int requestedWidth) throws IOException {
+        CarImage image = findImage(filename);
+        Resource resource = findResource(filename);
+        int width = variantWidthFor(requestedWidth);
+        if (image == null || resource == null || image.getWidth() <= width) {
+            return null;
+        }
+        String key = image.getSha256() + "-" + width;
+        Variant cached = findCachedVariant(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        // Single flight: the first request generates, the others wait for its result
+        CompletableFuture<Variant> generation = new CompletableFuture<>();
+        CompletableFuture<Variant> running = variantsInProgress.putIfAbsent(key, generation);
+        if (running != null) {
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw new IOException("Variant generation failed for " + filename, e.getCause());
+            }
+        }
+        try {
+            Variant variant = generateVariant(resource, key, width);
+            generation.complete(variant);
+            return variant;
+        } catch (IOException | RuntimeException e) {
+            generation.completeExceptionally(e);
+            throw e;
+        } finally {
+            variantsInProgress.remove(key, generation);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void prebuildVariantsOnStartup() {
+        if (!prebuildVariants) {
+            return;
+        }
+        Thread.ofVirtual().name("image-variants").start(() -> {
+            for (String filename : imagesByName.keySet()) {
+                for (int width : VARIANT_WIDTHS) {
+                    try {
+                        getVariant(filename, width);
+                    } catch (IOException e) {
+                        System.err.println("WARNING: Could not prebuild variant of " + filename + ": " + e.getMessage());
+                    }
+                }
+            }
+            System.out.println("DEBUG: Image variants prebuilt in " + variantCacheDir);
+        });
+    }
+
+    static int variantWidthFor(int requestedWidth) {
+        for (int width : VARIANT_WIDTHS) {
+            if (requestedWidth <= width) {
+                return width;
+            }
+        }
+        return VARIANT_WIDTHS[VARIANT_WIDTHS.length - 1];
+    }
+
+    private Variant findCachedVariant(String key) throws IOException {
+        for (String extension : new String[] {".jpg", ".png"}) {
+            Path path = variantCacheDir.resolve(key + extension);
+            if (Files.exists(path)) {
+                return new Variant(path, contentTypeOf(path.getFileName().toString()), "\"" + key + "\"", Files.size(path));
+            }
+        }
+        return null;
+    }
+
+    private Variant generateVariant(Resource resource, String key, int width) throws IOException {
+        BufferedImage source;
+        try (InputStream in = resource.getInputStream()) {
+            source = ImageIO.read(in);
+        }
+        if (source == null) {
+            return null; // No ImageIO reader for this format
+        }
+        boolean hasAlpha = source.getColorModel().hasAlpha();
+        BufferedImage scaled = scale(source, width, hasAlpha);
+
+        // Opaque photos compress far better as JPEG; keep PNG only when transparency matters
+        String extension = hasAlpha ? ".png" : ".jpg";
+        Files.createDirectories(variantCacheDir);
+        Path tmp = Files.createTempFile(variantCacheDir, key, ".tmp");
+        try (ImageOutputStream out = ImageIO.createImageOutputStream(tmp.toFile())) {
+            ImageWriter writer = ImageIO.getImageWritersByFormatName(hasAlpha ? "png" : "jpeg").next();
+            try {
+                writer.setOutput(out);
+                ImageWriteParam param = writer.getDefaultWriteParam();
+                if (!hasAlpha) {
+                    param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                    param.setCompressionQuality(JPEG_QUALITY);
+                }
+                writer.write(null, new IIOImage(scaled, null, null), param);
+            } finally {
+                writer.dispose();
+            }
+        }
+        Path path = variantCacheDir.resolve(key + extension);
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new Variant(path, contentTypeOf(path.getFileName().toString()), "\"" + key + "\"", Files.size(path));
+    }
+
+    // Halves the image until close to the target, then resizes once more, which keeps quality without aliasing
+    private static BufferedImage scale(BufferedImage source, int targetWidth, boolean hasAlpha) {
+        int targetHeight = Math.max(1, Math.round(source.getHeight() * (targetWidth / (float) source.getWidth())));
+        int type = hasAlpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage current = source;
+        int width = source.getWidth();
+        int height = source.getHeight();
+        do {
+            width = Math.max(targetWidth, width / 2);
+            height = Math.max(targetHeight, height / 2);
+            BufferedImage step = new BufferedImage(width, height, type);
+            Graphics2D graphics = step.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(current, 0, 0, width, height, null);
+            graphics.dispose();
+            current = step;
+        } while (width != targetWidth || height != targetHeight);
+        return current;
+    }
+
+    private static void hashContent(Resource resource, CarImage image) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        long size = 0;
+        byte[] buffer = new byte[8192];
+        try (InputStream in = resource.getInputStream()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+                size += read;
+            }
+        }
+        image.setSize(size);
+        image.setSha256(HexFormat.of().formatHex(digest.digest()));
+    }
+
+    // Reads only the image header to get its dimensions
+    private static void readDimensions(Resource resource, CarImage image) {
+        try (InputStream in = resource.getInputStream(); ImageInputStream imageIn = ImageIO.createImageInputStream(in)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageIn);
+            if (!readers.hasNext()) {
+                return;
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageIn, true, true);
+                image.setWidth(reader.getWidth(0));
+                image.setHeight(reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException e) {
+            System.err.println("WARNING: Could not read dimensions of " + image.getFilename() + ": " + e.getMessage());
+        }
+    }
+
+    static String contentTypeOf(String filename) {
+        if (filename.endsWith(".webp")) {
+            return "image/webp";
+        } else if (filename.endsWith(".png")) {
+            return "image/png";
+        } else if (filename.endsWith(".jpg") || filename.endsWith(".jpeg")) {
+            return "image/jpeg";
+        }
+        return "application/octet-stream";
+    }
 }
@@ -0,0 +1,44 @@
+package dev.renting.delegations;
+
+/**
+ * An available car found by a radius search, together with the delegation
+ * that holds it and the distance from the searched location.
+ */
+public class NearbyCar {
+    private Car car;
+    private Delegation delegation;
+    private double distanceKm;
+
+    // Constructor vacío requerido por Hilla para serializar el objeto
+    public NearbyCar() {}
+
+    public NearbyCar(Car car, Delegation delegation, double distanceKm) {
+        this.car = car;
+        this.delegation = delegation;
+        this.distanceKm = distanceKm;
+    }
+
+    public Car getCar() {
+        return car;
+    }
+
+    public void setCar(Car car) {
+        this.car = car;
+    }
+
+    public Delegation getDelegation() {
+        return delegation;
+    }
+
+    public void setDelegation(Delegation delegation) {
+        this.delegation = delegation;
+    }
+
+    public double getDistanceKm() {
+        return distanceKm;
+    }
+
+    public void setDistanceKm(double distanceKm) {
+        this.distanceKm = distanceKm;
+    }
+}
@@ -0,0 +1,412 @@
+package dev.renting.delegations;
+
+import dev.renting.config.InvalidationEvent;
+import dev.renting.config.InvalidationResyncEvent;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Occupancy and revenue per delegation and day, kept up to date incrementally from
+ * booking saves and deletes so reports never have to scan the Bookings table.
+ *
+ * Each delegation owns two primitive arrays indexed by day (cars booked, revenue) that
+ * grow on demand. The aggregates are written to a local file periodically and on shutdown;
+ * when no file exists on startup they are rebuilt from a scan of Bookings, and they are
+ * rebuilt again every night ({@code renting.aggregates.rebuild-cron}) to correct any drift.
+ */
+@Component
+public class OccupancyAggregates {
+
+    private static final int FILE_MAGIC = 0x4F434355; // "OCCU"
+    private static final int FILE_VERSION = 1;
+    // Bookings longer than this are considered bad data and are not aggregated
+    private static final int MAX_BOOKING_DAYS = 3660;
+    // Longest range getOccupancy answers, two years
+    private static final int MAX_QUERY_DAYS = 731;
+    private static final long MIN_RETRY_MS = 60_000;
+    private static final long MAX_RETRY_MS = 30 * 60_000;
+
+    private final DelegationRepository delegationRepository;
+    private final BookingArchive bookingArchive;
+    private final Path aggregatesFile;
+
+    // Both maps are replaced as a whole by a rebuild
+    private volatile Map<String, DailySeries> seriesByDelegation = new ConcurrentHashMap<>();
+    private volatile Map<String, Integer> carPrices = new ConcurrentHashMap<>();
+    // Bookings update under the read lock (they only contend per delegation); a rebuild swap takes the write lock
+    private final ReadWriteLock rebuildLock = new ReentrantReadWriteLock();
+    // Booking changes seen while a rebuild scans, replayed into its result; null when no rebuild runs
+    private List<BookingChangedEvent> changesDuringRebuild;
+    private volatile boolean dirty;
+    // Set while a background rebuild runs, so resyncs arriving meanwhile do not start more scans
+    private final AtomicBoolean rebuildPending = new AtomicBoolean();
+    // A failed rebuild is not retried on resyncs before this time; the wait doubles on every failure
+    private volatile long retryAfterMillis;
+    private long retryMs = MIN_RETRY_MS; // Only used by the rebuild, which is synchronized
+
+    @Autowired
+    public OccupancyAggregates(DelegationRepository delegationRepository, BookingArchive bookingArchive,
+                               @Value("${renting.aggregates.file:data/occupancy.bin}") String aggregatesFile) {
+        this.delegationRepository = delegationRepository;
+        this.bookingArchive = bookingArchive;
+        this.aggregatesFile = Path.of(aggregatesFile);
+    }
+
+    // Day arrays of one delegation; index i is the day baseDay + i
+    private static final class DailySeries {
+        long baseDay;
+        int[] carsBooked = new int[0];
+        long[] revenue = new long[0];
+
+        // Makes sure the arrays cover [fromDay, toDay]
+        void ensureRange(long fromDay, long toDay) {
+            if (carsBooked.length == 0) {
+                baseDay = fromDay;
+            }
+            long newBase = Math.min(baseDay, fromDay);
+            long newEnd = Math.max(baseDay + carsBooked.length - 1, toDay);
+            int newLength = (int) (newEnd - newBase + 1);
+            if (newBase == baseDay && newLength <= carsBooked.length) {
+                return;
+            }
+            // Grow with some headroom to avoid copying on every new day
+            int capacity = Math.max(newLength, carsBooked.length + carsBooked.length / 2);
+            int offset = (int) (baseDay - newBase);
+            int[] newCars = new int[capacity];
+            long[] newRevenue = new long[capacity];
+            System.arraycopy(carsBooked, 0, newCars, offset, carsBooked.length);
+            System.arraycopy(revenue, 0, newRevenue, offset, revenue.length);
+            carsBooked = newCars;
+            revenue = newRevenue;
+            baseDay = newBase;
+        }
+    }
+
+    @EventListener
+    public void onBookingChanged(BookingChangedEvent event) {
+        int sign = event.getType() == BookingChangedEvent.Type.SAVED ? 1 : -1;
+        rebuildLock.readLock().lock();
+        try {
+            synchronized (rebuildLock) {
+                if (changesDuringRebuild != null) {
+                    changesDuringRebuild.add(event);
+                }
+            }
+            apply(seriesByDelegation, carPrices, event.getBooking(), sign);
+        } finally {
+            rebuildLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns occupancy for every day of the range. Runs in O(days) and never reads Bookings.
+     */
+    public DelegationOccupancy getOccupancy(String delegationId, LocalDate startDate, LocalDate endDate) {
+        long fromDay = startDate.toEpochDay();
+        int days = (int) (endDate.toEpochDay() - fromDay + 1);
+        if (days <= 0) {
+            throw new IllegalArgumentException("End date must not be before start date.");
+        }
+        if (days > MAX_QUERY_DAYS) {
+            throw new IllegalArgumentException("The period can be at most " + MAX_QUERY_DAYS + " days.");
+        }
+        int[] carsBooked = new int[days];
+        long[] revenue = new long[days];
+        DailySeries series = seriesByDelegation.get(delegationId);
+        if (series != null) {
+            synchronized (series) {
+                for (int i = 0; i < days; i++) {
+                    long index = fromDay + i - series.baseDay;
+                    if (index >= 0 && index < series.carsBooked.length) {
+                        carsBooked[i] = series.carsBooked[(int) index];
+                        revenue[i] = series.revenue[(int) index];
+                    }
+                }
+            }
+        }
+
+        int carQuantity = 0;
+        Delegation profile = delegationRepository.get(delegationId, "profile", Delegation.class);
+        if (profile != null) {
+            carQuantity = profile.getCarQuantity();
+        }
+        double[] utilization = new double[days];
+        if (carQuantity > 0) {
+            for (int i = 0; i < days; i++) {
+                utilization[i] = carsBooked[i] * 100.0 / carQuantity;
+            }
+        }
+
+        DelegationOccupancy occupancy = new DelegationOccupancy();
+        occupancy.setDelegationId(delegationId);
+        occupancy.setStartDate(startDate.toString());
+        occupancy.setEndDate(endDate.toString());
+        occupancy.setCarQuantity(carQuantity);
+        occupancy.setCarsBooked(carsBooked);
+        occupancy.setUtilizationPercent(utilization);
+        occupancy.setRevenue(revenue);
+        return occupancy;
+    }
+
+    private void apply(Map<String, DailySeries> target, Map<String, Integer> prices, Booking booking, int sign) {
+        if (booking.getDelegationId() == null || booking.getStartDate() == null || booking.getEndDate() == null) {
+            return;
+        }
+        long fromDay = LocalDate.parse(booking.getStartDate()).toEpochDay();
+        long toDay = LocalDate.parse(booking.getEndDate()).toEpochDay();
+        if (toDay < fromDay || toDay - fromDay >= MAX_BOOKING_DAYS) {
+            System.err.println("WARNING: Skipping booking with invalid period in occupancy aggregates: " + booking.getBookingId());
+            return;
+        }
+        int price = priceOf(prices, booking.getDelegationId(), booking.getCarId());
+        DailySeries series = target.computeIfAbsent(booking.getDelegationId(), id -> new DailySeries());
+        synchronized (series) {
+            series.ensureRange(fromDay, toDay);
+            int start = (int) (fromDay - series.baseDay);
+            int end = (int) (toDay - series.baseDay);
+            for (int i = start; i <= end; i++) {
+                series.carsBooked[i] += sign;
+                series.revenue[i] += (long) sign * price;
+            }
+        }
+        dirty = true;
+    }
+
+    // Daily price of a car; cached because a booking only carries the car id
+    private int priceOf(Map<String, Integer> prices, String delegationId, String carId) {
+        if (carId == null) {
+            return 0;
+        }
+        Integer cached = prices.get(carId);
+        if (cached != null) {
+            return cached;
+        }
+        Car car = delegationRepository.get(delegationId, carId, Car.class);
+        int price = car != null ? car.getPrice() : 0;
+        prices.put(carId, price);
+        return price;
+    }
+
+    // A car changed here or on another instance: its price is read again on next use
+    @EventListener
+    public void onInvalidation(InvalidationEvent event) {
+        if (ClusterEventRelay.CAR.equals(event.getNamespace())) {
+            carPrices.remove(event.getKey());
+        }
+    }
+
+    // Booking changes from another instance were lost, so the aggregates may be off
+    @EventListener
+    public void onResync(InvalidationResyncEvent event) {
+        if (System.currentTimeMillis() < retryAfterMillis) {
+            return;
+        }
+        if (rebuildPending.compareAndSet(false, true)) {
+            Thread.ofVirtual().name("occupancy-rebuild").start(() -> {
+                try {
+                    rebuild();
+                } finally {
+                    rebuildPending.set(false);
+                }
+            });
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadOnStartup() {
+        try {
+            if (load()) {
+                System.out.println("DEBUG: Occupancy aggregates loaded from " + aggregatesFile);
+                return;
+            }
+        } catch (IOException e) {
+            System.err.println("WARNING: Could not read occupancy aggregates, rebuilding: " + e.getMessage());
+        }
+        Thread.ofVirtual().name("occupancy-rebuild").start(this::rebuild);
+    }
+
+    /**
+     * Recomputes every aggregate from a full scan of Cars, Bookings and the booking archive
+     * into new maps, and replaces the current ones only if the scan succeeds. Booking changes
+     * made while scanning are replayed into the new maps by booking key before the swap, so a
+     * booking the scan already saw is not counted twice.
+     */
+    @Scheduled(cron = "${renting.aggregates.rebuild-cron:0 40 3 * * *}")
+    public synchronized void rebuild() {
+        synchronized (rebuildLock) {
+            changesDuringRebuild = new ArrayList<>();
+        }
+        Map<String, DailySeries> freshSeries = new ConcurrentHashMap<>();
+        Map<String, Integer> freshPrices = new ConcurrentHashMap<>();
+        // What the scan counted for every carId|startDate, to reconcile the changes against
+        Map<String, Booking> counted = new HashMap<>();
+        try {
+            for (Car car : delegationRepository.listAllCars()) {
+                if (car.getOperation() != null) {
+                    freshPrices.put(car.getOperation(), car.getPrice());
+                }
+            }
+            // Archived and live bookings, each once
+            for (Booking booking : bookingArchive.findBookings(LocalDate.MIN, LocalDate.MAX, null)) {
+                apply(freshSeries, freshPrices, booking, 1);
+                counted.put(keyOf(booking), booking);
+            }
+        } catch (RuntimeException e) {
+            synchronized (rebuildLock) {
+                changesDuringRebuild = null;
+            }
+            retryAfterMillis = System.currentTimeMillis() + retryMs;
+            System.err.println("ERROR: Occupancy aggregates rebuild failed, keeping the current ones: " + e.getMessage());
+            retryMs = Math.min(retryMs * 2, MAX_RETRY_MS);
+            return;
+        }
+        retryAfterMillis = 0;
+        retryMs = MIN_RETRY_MS;
+        rebuildLock.writeLock().lock();
+        try {
+            synchronized (rebuildLock) {
+                for (BookingChangedEvent change : changesDuringRebuild) {
+                    replay(freshSeries, freshPrices, counted, change);
+                }
+                changesDuringRebuild = null;
+            }
+            seriesByDelegation = freshSeries;
+            carPrices = freshPrices;
+        } finally {
+            rebuildLock.writeLock().unlock();
+        }
+        System.out.println("DEBUG: Occupancy aggregates rebuilt for " + freshSeries.size() + " delegations.");
+        persist();
+    }
+
+    // Applies a change only where the scan saw something else than its outcome
+    private void replay(Map<String, DailySeries> target, Map<String, Integer> prices, Map<String, Booking> counted,
+                        BookingChangedEvent change) {
+        Booking booking = change.getBooking();
+        String key = keyOf(booking);
+        Booking current = counted.get(key);
+        if (change.getType() == BookingChangedEvent.Type.SAVED) {
+            if (current != null && isSame(current, booking)) {
+                return; // The scan already read it
+            }
+            if (current != null) {
+                apply(target, prices, current, -1);
+            }
+            apply(target, prices, booking, 1);
+            counted.put(key, booking);
+        } else if (current != null && isSame(current, booking)) {
+            apply(target, prices, current, -1);
+            counted.remove(key);
+        }
+    }
+
+    private static String keyOf(Booking booking) {
+        return booking.getCarId() + "|" + booking.getStartDate();
+    }
+
+    private static boolean isSame(Booking a, Booking b) {
+        return Objects.equals(a.getBookingId(), b.getBookingId())
+                && Objects.equals(a.getEndDate(), b.getEndDate())
+                && Objects.equals(a.getDelegationId(), b.getDelegationId());
+    }
+
+    @Scheduled(fixedDelayString = "${renting.aggregates.persist-interval-ms:60000}")
+    public void persistIfDirty() {
+        if (dirty) {
+            persist();
+        }
+    }
+
+    @PreDestroy
+    public void persist() {
+        dirty = false;
+        try {
+            Path parent = aggregatesFile.toAbsolutePath().getParent();
+            Files.createDirectories(parent);
+            Path tmp = Files.createTempFile(parent, "occupancy", ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(FILE_VERSION);
+                // Copied first, so the count matches the entries even if a delegation is added meanwhile
+                List<Map.Entry<String, DailySeries>> entries = new ArrayList<>(seriesByDelegation.entrySet());
+                out.writeInt(entries.size());
+                for (Map.Entry<String, DailySeries> entry : entries) {
+                    long baseDay;
+                    int[] carsBooked;
+                    long[] revenue;
+                    DailySeries series = entry.getValue();
+                    synchronized (series) {
+                        baseDay = series.baseDay;
+                        carsBooked = series.carsBooked.clone();
+                        revenue = series.revenue.clone();
+                    }
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(baseDay);
+                    out.writeInt(carsBooked.length);
+                    for (int value : carsBooked) {
+                        out.writeInt(value);
+                    }
+                    for (long value : revenue) {
+                        out.writeLong(value);
+                    }
+                }
+            }
+            Files.move(tmp, aggregatesFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            dirty = true; // Try again on the next run
+            System.err.println("ERROR: Could not persist occupancy aggregates: " + e.getMessage());
+        }
+    }
+
+    private boolean load() throws IOException {
+        if (!Files.exists(aggregatesFile)) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(aggregatesFile)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                return false;
+            }
+            int delegations = in.readInt();
+            for (int d = 0; d < delegations; d++) {
+                DailySeries series = new DailySeries();
+                String delegationId = in.readUTF();
+                series.baseDay = in.readLong();
+                int length = in.readInt();
+                series.carsBooked = new int[length];
+                series.revenue = new long[length];
+                for (int i = 0; i < length; i++) {
+                    series.carsBooked[i] = in.readInt();
+                }
+                for (int i = 0; i < length; i++) {
+                    series.revenue[i] = in.readLong();
+                }
+                seriesByDelegation.put(delegationId, series);
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,139 @@
+package dev.renting.delegations;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.renting.config.AdmissionControlFilter;
+import dev.renting.config.HedgedReads;
+import dev.renting.config.InvalidationBus;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Serves the counters of this instance as JSON under {@code GET /stats}, for dashboards and
+ * alerting: admission control, hedged reads, the invalidation bus, the booked car filter,
+ * degraded mode, holds and the booking archive. Values are totals since startup.
+ *
+ * Requests must carry {@code Authorization: Bearer <renting.stats.token>}; without a
+ * configured token the page is disabled.
+ */
+@Component
+public class OperationalStatsFilter extends OncePerRequestFilter {
+
+    static final String STATS_PATH = "/stats";
+
+    private final AdmissionControlFilter admissionControl;
+    private final HedgedReads hedgedReads;
+    private final InvalidationBus invalidationBus;
+    private final BookedCarFilter bookedCarFilter;
+    private final DegradedMode degradedMode;
+    private final CatalogSnapshot catalogSnapshot;
+    private final ReservationHoldService reservationHoldService;
+    private final BookingArchive bookingArchive;
+    private final AvailabilityEventBus availabilityEventBus;
+    private final byte[] token;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    public OperationalStatsFilter(AdmissionControlFilter admissionControl, HedgedReads hedgedReads,
+                                  InvalidationBus invalidationBus, BookedCarFilter bookedCarFilter,
+                                  DegradedMode degradedMode, CatalogSnapshot catalogSnapshot,
+                                  ReservationHoldService reservationHoldService, BookingArchive bookingArchive,
+                                  AvailabilityEventBus availabilityEventBus,
+                                  @Value("${renting.stats.token:}") String token) {
+        this.admissionControl = admissionControl;
+        this.hedgedReads = hedgedReads;
+        this.invalidationBus = invalidationBus;
+        this.bookedCarFilter = bookedCarFilter;
+        this.degradedMode = degradedMode;
+        this.catalogSnapshot = catalogSnapshot;
+        this.reservationHoldService = reservationHoldService;
+        this.bookingArchive = bookingArchive;
+        this.availabilityEventBus = availabilityEventBus;
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"GET".equals(request.getMethod())
+                || !request.getRequestURI().equals(request.getContextPath() + STATS_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        if (!isAuthorized(request)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        response.setContentType("application/json;charset=UTF-8");
+        response.setHeader("Cache-Control", "no-store");
+        objectMapper.writeValue(response.getOutputStream(), collect());
+    }
+
+    private Map<String, Object> collect() {
+        Map<String, Object> admission = new LinkedHashMap<>();
+        for (String operation : admissionControl.getOperations()) {
+            admission.put(operation, Map.of(
+                    "admitted", admissionControl.getAdmittedCount(operation),
+                    "shed", admissionControl.getShedCount(operation)));
+        }
+
+        Map<String, Object> reads = new LinkedHashMap<>();
+        reads.put("reads", hedgedReads.getReadCount());
+        reads.put("hedges", hedgedReads.getHedgeCount());
+        reads.put("hedgeWins", hedgedReads.getHedgeWinCount());
+        reads.put("timeouts", hedgedReads.getTimeoutCount());
+
+        Map<String, Object> invalidation = new LinkedHashMap<>();
+        invalidation.put("enabled", invalidationBus.isEnabled());
+        invalidation.put("peers", invalidationBus.getPeerCount());
+        invalidation.put("sent", invalidationBus.getSentEventCount());
+        invalidation.put("received", invalidationBus.getReceivedEventCount());
+        invalidation.put("resyncs", invalidationBus.getResyncCount());
+        invalidation.put("rejected", invalidationBus.getRejectedDatagramCount());
+
+        Map<String, Object> filter = new LinkedHashMap<>();
+        filter.put("sizeBytes", bookedCarFilter.getSizeBytes());
+        filter.put("estimatedFalsePositiveRate", bookedCarFilter.getEstimatedFalsePositiveRate());
+        filter.put("lookups", bookedCarFilter.getLookupCount());
+        filter.put("lookupsAvoided", bookedCarFilter.getLookupsAvoidedCount());
+        filter.put("queriedButFree", bookedCarFilter.getQueriedButFreeCount());
+
+        Map<String, Object> degraded = new LinkedHashMap<>();
+        degraded.put("active", degradedMode.isDegraded());
+        degraded.put("staleReads", degradedMode.getStaleReadCount());
+        degraded.put("rejectedWrites", degradedMode.getRejectedWriteCount());
+        degraded.put("snapshotAgeSeconds", catalogSnapshot.isLoaded() ? catalogSnapshot.getAgeMillis() / 1000 : -1);
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("admission", admission);
+        stats.put("dynamodbReads", reads);
+        stats.put("invalidationBus", invalidation);
+        stats.put("bookedCarFilter", filter);
+        stats.put("degradedMode", degraded);
+        stats.put("activeHolds", reservationHoldService.getActiveHoldCount());
+        stats.put("archiveSegments", bookingArchive.getSegmentCount());
+        stats.put("availabilitySubscribers", availabilityEventBus.getSubscriberCount());
+        return stats;
+    }
+
+    private boolean isAuthorized(HttpServletRequest request) {
+        String authorization = request.getHeader("Authorization");
+        if (token.length == 0 || authorization == null || !authorization.startsWith("Bearer ")) {
+            return false;
+        }
+        byte[] presented = authorization.substring("Bearer ".length()).trim().getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(token, presented);
+    }
+}
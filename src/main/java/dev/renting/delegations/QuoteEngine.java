@@ -0,0 +1,128 @@
+package dev.renting.delegations;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Prices rentals on the server, for many cars and one date range at a time.
+ *
+ * The tariffs are compiled at startup into primitive arrays: a season percentage per month
+ * and a duration discount per rental length. Everything that depends only on the range
+ * (days, season weight, discount) is computed once per call, so each car costs a couple
+ * of long multiplications. Amounts are worked out in cents and rounded half up, like the
+ * booking form does: days are inclusive and the tax is added on top.
+ *
+ * The booking form charges days × price plus tax, so the defaults are a flat season and no
+ * duration discounts, which gives the same totals. Seasons and discounts must only be
+ * configured once the form and the stored booking total use this engine too.
+ */
+@Service
+public class QuoteEngine {
+
+    private final int[] seasonPercentByMonth = new int[12];
+    // Discount percent indexed by rental days; longer rentals use the last entry
+    private final int[] discountPercentByDays;
+    private final int taxPercent;
+
+    // Everything a quote needs from the date range
+    static final class Range {
+        final int days;
+        // Sum over the days of the season percentage, i.e. days weighted by season in hundredths
+        final long seasonWeight;
+        final int discountPercent;
+
+        Range(int days, long seasonWeight, int discountPercent) {
+            this.days = days;
+            this.seasonWeight = seasonWeight;
+            this.discountPercent = discountPercent;
+        }
+    }
+
+    @Autowired
+    public QuoteEngine(@Value("${renting.quote.season-percent:100,100,100,100,100,100,100,100,100,100,100,100}") String seasonPercent,
+                       @Value("${renting.quote.duration-discounts:}") String durationDiscounts,
+                       @Value("${renting.quote.tax-percent:23}") int taxPercent) {
+        String[] months = seasonPercent.split(",");
+        if (months.length != 12) {
+            throw new IllegalStateException("renting.quote.season-percent needs 12 values, one per month.");
+        }
+        for (int i = 0; i < 12; i++) {
+            seasonPercentByMonth[i] = Integer.parseInt(months[i].trim());
+        }
+        this.discountPercentByDays = compileDiscounts(durationDiscounts);
+        this.taxPercent = taxPercent;
+    }
+
+    // "7:10,14:15" (from days:percent off) becomes {0, 0, ..., 10 at 7, ..., 15 at 14}
+    private static int[] compileDiscounts(String durationDiscounts) {
+        List<int[]> steps = new ArrayList<>();
+        int maxDays = 0;
+        for (String step : durationDiscounts.split(",")) {
+            if (step.isBlank()) {
+                continue;
+            }
+            String[] parts = step.split(":");
+            int fromDays = Integer.parseInt(parts[0].trim());
+            steps.add(new int[] {fromDays, Integer.parseInt(parts[1].trim())});
+            maxDays = Math.max(maxDays, fromDays);
+        }
+        int[] table = new int[maxDays + 1];
+        for (int[] step : steps) {
+            for (int days = step[0]; days <= maxDays; days++) {
+                table[days] = Math.max(table[days], step[1]);
+            }
+        }
+        return table;
+    }
+
+    Range range(LocalDate startDate, LocalDate endDate) {
+        if (endDate.isBefore(startDate)) {
+            throw new IllegalArgumentException("End date must not be before start date.");
+        }
+        int days = Math.toIntExact(ChronoUnit.DAYS.between(startDate, endDate) + 1);
+        // One step per month of the range instead of one per day
+        long seasonWeight = 0;
+        LocalDate day = startDate;
+        while (!day.isAfter(endDate)) {
+            LocalDate monthEnd = day.withDayOfMonth(day.lengthOfMonth());
+            LocalDate segmentEnd = monthEnd.isBefore(endDate) ? monthEnd : endDate;
+            long segmentDays = ChronoUnit.DAYS.between(day, segmentEnd) + 1;
+            seasonWeight += segmentDays * seasonPercentByMonth[day.getMonthValue() - 1];
+            day = segmentEnd.plusDays(1);
+        }
+        int discount = discountPercentByDays[Math.min(days, discountPercentByDays.length - 1)];
+        return new Range(days, seasonWeight, discount);
+    }
+
+    // Price before tax in cents; the daily price is in euros and the season weight in hundredths of a day
+    static long subtotalCents(int dailyPrice, Range range) {
+        return (dailyPrice * range.seasonWeight * (100 - range.discountPercent) + 50) / 100;
+    }
+
+    long taxCents(long subtotalCents) {
+        return (subtotalCents * taxPercent + 50) / 100;
+    }
+
+    /**
+     * Quotes every car for the same rental period.
+     *
+     * @return One quote per car, in the same order.
+     */
+    public List<CarQuote> quote(List<Car> cars, LocalDate startDate, LocalDate endDate) {
+        Range range = range(startDate, endDate);
+        List<CarQuote> quotes = new ArrayList<>(cars.size());
+        for (Car car : cars) {
+            long subtotal = subtotalCents(car.getPrice(), range);
+            long tax = taxCents(subtotal);
+            quotes.add(new CarQuote(car, range.days, range.discountPercent, subtotal / 100.0, tax / 100.0,
+                    (subtotal + tax) / 100.0));
+        }
+        return quotes;
+    }
+}
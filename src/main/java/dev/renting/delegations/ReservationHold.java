@@ -0,0 +1,73 @@
+package dev.renting.delegations;
+
+/**
+ * A short-lived hold on a car for a period while the customer completes the payment.
+ */
+public class ReservationHold {
+    private String holdId;
+    private String carId;
+    private String delegationId;
+    private String userId;
+    private String startDate;
+    private String endDate;
+    private String expiresAt; // Instante de caducidad en formato ISO-8601
+
+    // Constructor vacío requerido por Hilla para serializar el objeto
+    public ReservationHold() {}
+
+    public String getHoldId() {
+        return holdId;
+    }
+
+    public void setHoldId(String holdId) {
+        this.holdId = holdId;
+    }
+
+    public String getCarId() {
+        return carId;
+    }
+
+    public void setCarId(String carId) {
+        this.carId = carId;
+    }
+
+    public String getDelegationId() {
+        return delegationId;
+    }
+
+    public void setDelegationId(String delegationId) {
+        this.delegationId = delegationId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(String userId) {
+        this.userId = userId;
+    }
+
+    public String getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(String startDate) {
+        this.startDate = startDate;
+    }
+
+    public String getEndDate() {
+        return endDate;
+    }
+
+    public void setEndDate(String endDate) {
+        this.endDate = endDate;
+    }
+
+    public String getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(String expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
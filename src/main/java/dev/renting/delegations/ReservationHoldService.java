@@ -0,0 +1,217 @@
+package dev.renting.delegations;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Temporary holds on cars while the customer pays.
+ *
+ * Active holds live in memory, indexed by id and by car, and are respected by the
+ * availability searches. Their expiry is tracked in a hierarchical {@link TimingWheel}, so
+ * placing a hold and expiring it are O(1) and no periodic scan over all holds is needed.
+ * A hold becomes a booking with {@link #confirmHold(String)}, which claims the hold
+ * exactly once and writes the booking with a conditional put.
+ *
+ * Holds are not shared between instances: they only block bookings and availability
+ * searches handled by the instance that placed them, and only that instance can confirm
+ * them. With several instances the booking flow must be routed to one instance per car
+ * (or per customer session) for holds to protect it.
+ */
+@Service
+public class ReservationHoldService {
+
+    private static final long TICK_MS = 100;
+    // 64 slots and 4 levels cover 100 ms * 64^4, about 19 days
+    private static final int WHEEL_SIZE = 64;
+    private static final int WHEEL_LEVELS = 4;
+
+    private final DelegationRepository delegationRepository;
+    private final ApplicationEventPublisher eventPublisher;
+    private final long holdTtlMs;
+
+    private final TimingWheel<ActiveHold> expiryWheel = new TimingWheel<>(TICK_MS, WHEEL_SIZE, WHEEL_LEVELS, System.currentTimeMillis());
+    private final Map<String, ActiveHold> holdsById = new ConcurrentHashMap<>();
+    private final Map<String, Set<ActiveHold>> holdsByCar = new ConcurrentHashMap<>();
+
+    @Autowired
+    public ReservationHoldService(DelegationRepository delegationRepository,
+                                  ApplicationEventPublisher eventPublisher,
+                                  @Value("${renting.holds.ttl-seconds:600}") long holdTtlSeconds) {
+        this.delegationRepository = delegationRepository;
+        this.eventPublisher = eventPublisher;
+        this.holdTtlMs = holdTtlSeconds * 1000;
+    }
+
+    // A hold plus its parsed dates and the handle of its timeout in the wheel
+    private static final class ActiveHold {
+        final ReservationHold hold;
+        final LocalDate startDate;
+        final LocalDate endDate;
+        volatile TimingWheel.Timeout<ActiveHold> timeout;
+        boolean expired; // Guarded by the hold itself
+
+        ActiveHold(ReservationHold hold, LocalDate startDate, LocalDate endDate) {
+            this.hold = hold;
+            this.startDate = startDate;
+            this.endDate = endDate;
+        }
+
+        boolean overlapsWith(LocalDate queryStartDate, LocalDate queryEndDate) {
+            return !startDate.isAfter(queryEndDate) && !endDate.isBefore(queryStartDate);
+        }
+    }
+
+    /**
+     * Places a hold on the car for the period.
+     * @throws IllegalStateException if the car is booked or already held in that period.
+     */
+    public ReservationHold placeHold(String carId, String delegationId, String userId,
+                                     LocalDate startDate, LocalDate endDate) {
+        if (isBooked(carId, startDate, endDate)) {
+            throw new IllegalStateException("Car " + carId + " is already booked in the requested period.");
+        }
+
+        long expiresAtMs = System.currentTimeMillis() + holdTtlMs;
+        ReservationHold hold = new ReservationHold();
+        hold.setHoldId("HOLD#" + UUID.randomUUID());
+        hold.setCarId(carId);
+        hold.setDelegationId(delegationId);
+        hold.setUserId(userId);
+        hold.setStartDate(startDate.toString());
+        hold.setEndDate(endDate.toString());
+        hold.setExpiresAt(Instant.ofEpochMilli(expiresAtMs).toString());
+        ActiveHold activeHold = new ActiveHold(hold, startDate, endDate);
+
+        // compute() locks the car's entry, so two overlapping holds cannot both get in
+        holdsByCar.compute(carId, (id, holds) -> {
+            Set<ActiveHold> carHolds = holds != null ? holds : ConcurrentHashMap.newKeySet();
+            for (ActiveHold existing : carHolds) {
+                if (existing.overlapsWith(startDate, endDate)) {
+                    throw new IllegalStateException("Car " + carId + " is already held in the requested period.");
+                }
+            }
+            carHolds.add(activeHold);
+            return carHolds;
+        });
+        activeHold.timeout = expiryWheel.schedule(activeHold, expiresAtMs);
+        holdsById.put(hold.getHoldId(), activeHold);
+        return hold;
+    }
+
+    /**
+     * Turns the hold into a booking.
+     * @return The saved booking.
+     * @throws IllegalStateException if the hold expired, was already used or the slot was taken.
+     */
+    public Booking confirmHold(String holdId) {
+        // Only one caller can remove the hold, which makes the conversion happen at most once
+        ActiveHold activeHold = holdsById.remove(holdId);
+        if (activeHold == null) {
+            throw new IllegalStateException("Hold " + holdId + " does not exist or has expired.");
+        }
+        ReservationHold hold = activeHold.hold;
+        Booking booking = new Booking();
+        booking.setCarId(hold.getCarId());
+        booking.setStartDate(hold.getStartDate());
+        booking.setEndDate(hold.getEndDate());
+        booking.setUserId(hold.getUserId());
+        booking.setDelegationId(hold.getDelegationId());
+        booking.setBookingId("BOOKING#" + UUID.randomUUID());
+        booking.setBookingDate(LocalDate.now().toString());
+        // The car stays held while the booking is written, so a failed write can give the hold back
+        boolean saved;
+        try {
+            // saveIfAbsent only guards the exact start date, so overlapping bookings are checked first
+            saved = !isBooked(hold.getCarId(), activeHold.startDate, activeHold.endDate)
+                    && delegationRepository.saveIfAbsent(booking, "carId");
+        } catch (RuntimeException e) {
+            synchronized (activeHold) {
+                if (!activeHold.expired) {
+                    holdsById.put(holdId, activeHold);
+                }
+            }
+            throw e;
+        }
+        expiryWheel.cancel(activeHold.timeout);
+        removeFromCar(activeHold);
+        if (!saved) {
+            throw new IllegalStateException("Car " + hold.getCarId() + " is already booked in the requested period.");
+        }
+        eventPublisher.publishEvent(new BookingChangedEvent(booking, BookingChangedEvent.Type.SAVED));
+        return booking;
+    }
+
+    /**
+     * Releases a hold before it expires.
+     * @return false if the hold no longer exists.
+     */
+    public boolean releaseHold(String holdId) {
+        ActiveHold activeHold = holdsById.remove(holdId);
+        if (activeHold == null) {
+            return false;
+        }
+        expiryWheel.cancel(activeHold.timeout);
+        removeFromCar(activeHold);
+        return true;
+    }
+
+    /**
+     * True if an active hold on the car overlaps the period. In-memory only, no DynamoDB call.
+     */
+    public boolean isHeld(String carId, LocalDate startDate, LocalDate endDate) {
+        Set<ActiveHold> carHolds = holdsByCar.get(carId);
+        if (carHolds == null) {
+            return false;
+        }
+        for (ActiveHold activeHold : carHolds) {
+            if (activeHold.overlapsWith(startDate, endDate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getActiveHoldCount() {
+        return holdsById.size();
+    }
+
+    @Scheduled(fixedRate = TICK_MS)
+    public void expireHolds() {
+        List<ActiveHold> expired = expiryWheel.advance(System.currentTimeMillis());
+        for (ActiveHold activeHold : expired) {
+            // A concurrent confirm or release may have claimed it first; both removals are idempotent
+            synchronized (activeHold) {
+                activeHold.expired = true;
+            }
+            holdsById.remove(activeHold.hold.getHoldId(), activeHold);
+            removeFromCar(activeHold);
+        }
+    }
+
+    private boolean isBooked(String carId, LocalDate startDate, LocalDate endDate) {
+        for (Booking booking : delegationRepository.listByPartitionKey(carId, Booking.class)) {
+            if (booking.overlapsWith(startDate, endDate)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void removeFromCar(ActiveHold activeHold) {
+        holdsByCar.computeIfPresent(activeHold.hold.getCarId(), (id, holds) -> {
+            holds.remove(activeHold);
+            return holds.isEmpty() ? null : holds;
+        });
+    }
+}
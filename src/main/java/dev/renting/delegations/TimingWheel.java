@@ -0,0 +1,177 @@
+package dev.renting.delegations;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel for a large number of timeouts.
+ *
+ * Level 0 has {@code wheelSize} slots of {@code tickMs}; every following level has slots as
+ * wide as the whole previous level. A timeout is linked into the coarsest slot it fits in
+ * and is cascaded to finer levels as time approaches its deadline, so scheduling and
+ * cancelling are O(1) and every tick only touches the slots that are due.
+ * Timeouts fire at tick granularity, at most one tick late.
+ *
+ * All operations are synchronized; {@link #advance(long)} returns the expired payloads
+ * so callers can handle them outside the lock.
+ */
+public class TimingWheel<T> {
+
+    /**
+     * Handle returned by {@link #schedule(Object, long)}, used to cancel the timeout.
+     */
+    public static final class Timeout<T> {
+        private final T payload;
+        private final long deadlineMs;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+
+        private Timeout(T payload, long deadlineMs) {
+            this.payload = payload;
+            this.deadlineMs = deadlineMs;
+        }
+
+        public T getPayload() {
+            return payload;
+        }
+
+        public long getDeadlineMs() {
+            return deadlineMs;
+        }
+    }
+
+    private final long tickMs;
+    private final int wheelSize;
+    private final int mask;
+    // Slot width of every level, and one sentinel per slot heading a circular list
+    private final long[] levelTickMs;
+    private final Timeout<T>[][] slots;
+    private long currentTimeMs;
+    private int size;
+
+    public TimingWheel(long tickMs, int wheelSize, int levels, long startMs) {
+        if (Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("Wheel size must be a power of two.");
+        }
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.mask = wheelSize - 1;
+        this.levelTickMs = new long[levels];
+        this.slots = newSlots(levels, wheelSize);
+        long levelTick = tickMs;
+        for (int level = 0; level < levels; level++) {
+            levelTickMs[level] = levelTick;
+            levelTick *= wheelSize;
+            for (int slot = 0; slot < wheelSize; slot++) {
+                Timeout<T> sentinel = new Timeout<>(null, 0);
+                sentinel.prev = sentinel;
+                sentinel.next = sentinel;
+                slots[level][slot] = sentinel;
+            }
+        }
+        this.currentTimeMs = startMs - Math.floorMod(startMs, tickMs);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Timeout<T>[][] newSlots(int levels, int wheelSize) {
+        return (Timeout<T>[][]) Array.newInstance(Timeout.class, levels, wheelSize);
+    }
+
+    /**
+     * Schedules a payload to expire at the given time.
+     */
+    public synchronized Timeout<T> schedule(T payload, long deadlineMs) {
+        Timeout<T> timeout = new Timeout<>(payload, deadlineMs);
+        link(timeout);
+        size++;
+        return timeout;
+    }
+
+    /**
+     * Cancels a pending timeout.
+     * @return false if it already expired or was cancelled.
+     */
+    public synchronized boolean cancel(Timeout<T> timeout) {
+        if (timeout.next == null) {
+            return false;
+        }
+        unlink(timeout);
+        size--;
+        return true;
+    }
+
+    /**
+     * Moves the wheel forward to {@code nowMs}.
+     * @return The payloads whose deadline has passed.
+     */
+    public synchronized List<T> advance(long nowMs) {
+        List<T> expired = new ArrayList<>();
+        while (currentTimeMs + tickMs <= nowMs) {
+            currentTimeMs += tickMs;
+            // Cascade coarser slots that start now, from the top level down
+            for (int level = levelTickMs.length - 1; level > 0; level--) {
+                if (currentTimeMs % levelTickMs[level] == 0) {
+                    Timeout<T> sentinel = slots[level][(int) (currentTimeMs / levelTickMs[level]) & mask];
+                    while (sentinel.next != sentinel) {
+                        Timeout<T> timeout = sentinel.next;
+                        unlink(timeout);
+                        if (timeout.deadlineMs <= currentTimeMs) {
+                            expired.add(timeout.payload);
+                            size--;
+                        } else {
+                            link(timeout);
+                        }
+                    }
+                }
+            }
+            Timeout<T> sentinel = slots[0][(int) (currentTimeMs / tickMs) & mask];
+            while (sentinel.next != sentinel) {
+                Timeout<T> timeout = sentinel.next;
+                unlink(timeout);
+                expired.add(timeout.payload);
+                size--;
+            }
+        }
+        return expired;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // Links the timeout into the slot of the finest level whose range covers its deadline
+    private void link(Timeout<T> timeout) {
+        int topLevel = levelTickMs.length - 1;
+        int level = 0;
+        long deadlineTick = 0;
+        long currentTick = 0;
+        for (; level <= topLevel; level++) {
+            deadlineTick = Math.floorDiv(timeout.deadlineMs, levelTickMs[level]);
+            currentTick = currentTimeMs / levelTickMs[level];
+            if (deadlineTick - currentTick < wheelSize) {
+                break;
+            }
+        }
+        if (level > topLevel) {
+            // Beyond the wheel: park it in the farthest top-level slot and re-evaluate there
+            level = topLevel;
+            deadlineTick = currentTick + wheelSize - 1;
+        } else if (level == 0 && deadlineTick <= currentTick) {
+            // Already due or due within the current tick: fire on the next one
+            deadlineTick = currentTick + 1;
+        }
+        Timeout<T> sentinel = slots[level][(int) deadlineTick & mask];
+        timeout.prev = sentinel.prev;
+        timeout.next = sentinel;
+        sentinel.prev.next = timeout;
+        sentinel.prev = timeout;
+    }
+
+    private void unlink(Timeout<T> timeout) {
+        timeout.prev.next = timeout.next;
+        timeout.next.prev = timeout.prev;
+        timeout.prev = null;
+        timeout.next = null;
+    }
+}
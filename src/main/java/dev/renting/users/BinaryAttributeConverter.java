@@ -0,0 +1,236 @@
+package dev.renting.users;
+
+import software.amazon.awssdk.core.SdkBytes;
+import software.amazon.awssdk.enhanced.dynamodb.AttributeConverter;
+import software.amazon.awssdk.enhanced.dynamodb.AttributeValueType;
+import software.amazon.awssdk.enhanced.dynamodb.EnhancedType;
+import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Stores a nested bean as one binary attribute instead of a DynamoDB map, so its attribute
+ * names are not repeated in every item.
+ *
+ * The blob starts with a format byte (version in the low bits, {@link #COMPRESSED} when the
+ * rest is deflated) followed by the fields in the order the subclass writes them: numbers as
+ * zigzag varints, strings as length-prefixed UTF-8. Blobs longer than
+ * {@link #COMPRESS_FROM_BYTES} are deflated when that makes them smaller.
+ * Items written before the converter existed hold a map; those are still read, through the
+ * bean schema of the class.
+ */
+abstract class BinaryAttributeConverter<T> implements AttributeConverter<T> {
+
+    private static final int COMPRESSED = 0x80;
+    private static final int VERSION_MASK = 0x7F;
+    // Deflate costs microseconds and only pays off on long payloads, not on typical cars or delegations
+    private static final int COMPRESS_FROM_BYTES = 512;
+
+    private final Class<T> type;
+    private final int version;
+    private final TableSchema<T> mapSchema;
+
+    BinaryAttributeConverter(Class<T> type, int version) {
+        this.type = type;
+        this.version = version;
+        this.mapSchema = TableSchema.fromBean(type);
+    }
+
+    abstract void write(T value, Output out);
+
+    // Reads a payload written by the given version of write
+    abstract T read(Input in, int version);
+
+    @Override
+    public AttributeValue transformFrom(T value) {
+        if (value == null) {
+            return AttributeValue.builder().nul(true).build();
+        }
+        Output out = new Output();
+        out.buffer[0] = (byte) version;
+        write(value, out);
+        byte[] blob = Arrays.copyOf(out.buffer, out.length);
+        if (blob.length > COMPRESS_FROM_BYTES) {
+            byte[] deflated = deflate(blob);
+            if (deflated.length < blob.length) {
+                blob = deflated;
+            }
+        }
+        return AttributeValue.builder().b(SdkBytes.fromByteArrayUnsafe(blob)).build();
+    }
+
+    @Override
+    public T transformTo(AttributeValue input) {
+        if (input.hasM()) {
+            return mapSchema.mapToItem(input.m()); // Written before the binary format
+        }
+        if (input.b() == null) {
+            return null;
+        }
+        byte[] blob = input.b().asByteArrayUnsafe();
+        if (blob.length == 0) {
+            return null;
+        }
+        int format = blob[0] & 0xFF;
+        int blobVersion = format & VERSION_MASK;
+        if (blobVersion > version) {
+            throw new IllegalStateException("Cannot read " + type.getSimpleName() + " written with format version "
+                    + blobVersion + ", this build reads up to " + version + ".");
+        }
+        try {
+            byte[] payload = (format & COMPRESSED) != 0 ? inflate(blob) : blob;
+            return read(new Input(payload), blobVersion);
+        } catch (DataFormatException | IndexOutOfBoundsException e) {
+            throw new IllegalStateException("Corrupt " + type.getSimpleName() + " attribute.", e);
+        }
+    }
+
+    @Override
+    public EnhancedType<T> type() {
+        return EnhancedType.of(type);
+    }
+
+    @Override
+    public AttributeValueType attributeValueType() {
+        return AttributeValueType.B;
+    }
+
+    // Keeps the format byte, with COMPRESSED set, and deflates the rest
+    private static byte[] deflate(byte[] blob) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(blob, 1, blob.length - 1);
+            deflater.finish();
+            byte[] deflated = new byte[blob.length];
+            deflated[0] = (byte) (blob[0] | COMPRESSED);
+            int length = 1;
+            while (!deflater.finished() && length < deflated.length) {
+                length += deflater.deflate(deflated, length, deflated.length - length);
+            }
+            // Not finished means it did not fit, so it would not be smaller anyway
+            return deflater.finished() ? Arrays.copyOf(deflated, length) : blob;
+        } finally {
+            deflater.end(); // Frees the native zlib memory now instead of at GC
+        }
+    }
+
+    // Returns the payload with a dummy format byte in front, so offsets match uncompressed blobs
+    private static byte[] inflate(byte[] blob) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(blob, 1, blob.length - 1);
+            byte[] payload = new byte[blob.length * 4];
+            int length = 1;
+            while (!inflater.finished()) {
+                if (length == payload.length) {
+                    payload = Arrays.copyOf(payload, payload.length * 2);
+                }
+                int inflated = inflater.inflate(payload, length, payload.length - length);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Truncated payload");
+                }
+                length += inflated;
+            }
+            return payload;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    // Growable buffer; position 0 is reserved for the format byte
+    static final class Output {
+        private byte[] buffer = new byte[128];
+        private int length = 1;
+
+        private void ensure(int bytes) {
+            if (length + bytes > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + bytes));
+            }
+        }
+
+        // Zigzag varint, so small and negative numbers take one or two bytes
+        void writeInt(int value) {
+            ensure(5);
+            int zigzag = (value << 1) ^ (value >> 31);
+            while ((zigzag & ~0x7F) != 0) {
+                buffer[length++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            buffer[length++] = (byte) zigzag;
+        }
+
+        void writeBoolean(boolean value) {
+            ensure(1);
+            buffer[length++] = (byte) (value ? 1 : 0);
+        }
+
+        void writeDouble(double value) {
+            ensure(8);
+            long bits = Double.doubleToRawLongBits(value);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buffer[length++] = (byte) (bits >>> shift);
+            }
+        }
+
+        // UTF-8 bytes preceded by their length plus one, so 0 stands for null
+        void writeString(String value) {
+            if (value == null) {
+                writeInt(0);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length + 1);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buffer, length, bytes.length);
+            length += bytes.length;
+        }
+    }
+
+    static final class Input {
+        private final byte[] buffer;
+        private int position = 1;
+
+        Input(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        int readInt() {
+            int zigzag = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer[position++];
+                zigzag |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0 && shift < 35);
+            return (zigzag >>> 1) ^ -(zigzag & 1);
+        }
+
+        boolean readBoolean() {
+            return buffer[position++] != 0;
+        }
+
+        double readDouble() {
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits = (bits << 8) | (buffer[position++] & 0xFF);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        String readString() {
+            int length = readInt() - 1;
+            if (length < 0) {
+                return null;
+            }
+            String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+    }
+}
@@ -5,6 +5,7 @@ import dev.renting.delegations.Car;
 import dev.renting.delegations.Delegation;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbAttribute;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbBean;
+import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbConvertedBy;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbPartitionKey;
 import software.amazon.awssdk.enhanced.dynamodb.mapper.annotations.DynamoDbSortKey;
 
@@ -33,7 +34,9 @@ public class Booking {
     public String getOperation() { return operation; }
     public void setOperation(String operation) { this.operation = operation; }
 
+    // Nested objects are stored as compact binary attributes; items holding maps are still read
     @DynamoDbAttribute("car")
+    @DynamoDbConvertedBy(CarBinaryConverter.class)
     public Car getCar() { return car; }
     public void setCar(Car car) { this.car = car; }
 
@@ -62,10 +65,12 @@ public class Booking {
     public void setStatusBooking(String statusBooking) { this.statusBooking = statusBooking; }
 
     @DynamoDbAttribute("pickUpDelegation")
+    @DynamoDbConvertedBy(DelegationBinaryConverter.class)
     public Delegation getPickUpDelegation() { return pickUpDelegation; }
     public void setPickUpDelegation(Delegation pickUpDelegation) { this.pickUpDelegation = pickUpDelegation; }
 
     @DynamoDbAttribute("deliverDelegation")
+    @DynamoDbConvertedBy(DelegationBinaryConverter.class)
     public Delegation getDeliverDelegation() { return deliverDelegation; }
     public void setDeliverDelegation(Delegation deliverDelegation) { this.deliverDelegation = deliverDelegation; }
 }
\ No newline at end of file
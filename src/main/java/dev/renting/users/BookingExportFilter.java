@@ -0,0 +1,210 @@
+package dev.renting.users;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import dev.renting.delegations.DelegationRepository;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams full exports of the booking tables for finance:
+ * {@code /export/bookings} (the Bookings table) and {@code /export/user-bookings} (the
+ * bookings stored per user in Users).
+ *
+ * Parameters: {@code format=ndjson|csv} (default ndjson), {@code gzip=true} to download a
+ * .gz file, and {@code cursor=<partition key>,<sort key>} of the last row received
+ * (carId,startDate or userId,operation) to resume an interrupted export after that row.
+ *
+ * Rows are written as the scan pages through the table and the next page is only read once
+ * the previous one has been written, so a slow client slows the scan down and memory stays
+ * at one page whatever the size of the table. Requests must carry
+ * {@code Authorization: Bearer <renting.export.token>}; without a configured token the
+ * export is disabled.
+ */
+@Component
+public class BookingExportFilter extends OncePerRequestFilter {
+
+    static final String EXPORT_PATH = "/export/";
+    private static final int PAGE_SIZE = 500;
+
+    private static final List<Column<dev.renting.delegations.Booking>> BOOKING_COLUMNS = List.of(
+            new Column<>("carId", dev.renting.delegations.Booking::getCarId),
+            new Column<>("startDate", dev.renting.delegations.Booking::getStartDate),
+            new Column<>("endDate", dev.renting.delegations.Booking::getEndDate),
+            new Column<>("userId", dev.renting.delegations.Booking::getUserId),
+            new Column<>("delegationId", dev.renting.delegations.Booking::getDelegationId),
+            new Column<>("bookingId", dev.renting.delegations.Booking::getBookingId),
+            new Column<>("bookingDate", dev.renting.delegations.Booking::getBookingDate));
+
+    private static final List<Column<Booking>> USER_BOOKING_COLUMNS = List.of(
+            new Column<>("userId", Booking::getUserId),
+            new Column<>("operation", Booking::getOperation),
+            new Column<>("carId", b -> b.getCar() != null ? b.getCar().getOperation() : null),
+            new Column<>("startDate", Booking::getStartDate),
+            new Column<>("endDate", Booking::getEndDate),
+            new Column<>("status", Booking::getStatus),
+            new Column<>("statusPayment", Booking::getStatusPayment),
+            new Column<>("statusBooking", Booking::getStatusBooking),
+            new Column<>("totalToPayment", Booking::getTotalToPayment),
+            new Column<>("pickUpDelegationId", b -> b.getPickUpDelegation() != null ? b.getPickUpDelegation().getDelegationId() : null),
+            new Column<>("deliverDelegationId", b -> b.getDeliverDelegation() != null ? b.getDeliverDelegation().getDelegationId() : null));
+
+    private final DelegationRepository delegationRepository;
+    private final UserRepository userRepository;
+    private final byte[] token;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private record Column<T>(String name, Function<T, Object> value) {
+    }
+
+    @Autowired
+    public BookingExportFilter(DelegationRepository delegationRepository, UserRepository userRepository,
+                               @Value("${renting.export.token:}") String token) {
+        this.delegationRepository = delegationRepository;
+        this.userRepository = userRepository;
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+        // Rows are written one by one on a shared stream that the filter closes itself
+        objectMapper.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+        // Flushing each row would turn it into its own gzip sync flush and HTTP chunk; pages flush instead
+        objectMapper.configure(SerializationFeature.FLUSH_AFTER_WRITE_VALUE, false);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"GET".equals(request.getMethod())
+                || !request.getRequestURI().startsWith(request.getContextPath() + EXPORT_PATH);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String name = request.getRequestURI().substring(request.getContextPath().length() + EXPORT_PATH.length());
+        if (!name.equals("bookings") && !name.equals("user-bookings")) {
+            chain.doFilter(request, response);
+            return;
+        }
+        if (!isAuthorized(request)) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        String format = request.getParameter("format") != null ? request.getParameter("format") : "ndjson";
+        if (!format.equals("ndjson") && !format.equals("csv")) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown format: " + format);
+            return;
+        }
+        String[] cursor = null;
+        String cursorParam = request.getParameter("cursor");
+        if (cursorParam != null && !cursorParam.isEmpty()) {
+            int comma = cursorParam.indexOf(',');
+            if (comma <= 0 || comma == cursorParam.length() - 1) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Cursor must be <partition key>,<sort key>");
+                return;
+            }
+            cursor = new String[] {cursorParam.substring(0, comma), cursorParam.substring(comma + 1)};
+        }
+        boolean gzip = Boolean.parseBoolean(request.getParameter("gzip"));
+
+        String filename = name + "." + format + (gzip ? ".gz" : "");
+        response.setContentType(gzip ? "application/gzip"
+                : format.equals("csv") ? "text/csv;charset=UTF-8" : "application/x-ndjson;charset=UTF-8");
+        response.setHeader("Content-Disposition", "attachment; filename=\"" + filename + "\"");
+        response.setHeader("Cache-Control", "no-store");
+
+        // Sync flush lets every page reach the client as soon as it is written
+        OutputStream out = gzip ? new GZIPOutputStream(response.getOutputStream(), 8192, true) : response.getOutputStream();
+        try {
+            if (name.equals("bookings")) {
+                Iterable<dev.renting.delegations.Booking> rows = delegationRepository.scanFrom(dev.renting.delegations.Booking.class,
+                        cursor != null ? cursor[0] : null, cursor != null ? cursor[1] : null, PAGE_SIZE);
+                write(rows, BOOKING_COLUMNS, format, out);
+            } else {
+                Iterable<Booking> rows = userRepository.scanBookingsFrom(
+                        cursor != null ? cursor[0] : null, cursor != null ? cursor[1] : null, PAGE_SIZE);
+                write(rows, USER_BOOKING_COLUMNS, format, out);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private <T> void write(Iterable<T> rows, List<Column<T>> columns, String format, OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        // One generator for the whole response, so rows share its buffer
+        JsonGenerator generator = format.equals("csv") ? null : objectMapper.getFactory().createGenerator(writer);
+        if (generator != null) {
+            generator.setRootValueSeparator(null); // Rows are separated by the newline written after each
+        }
+        if (format.equals("csv")) {
+            for (int i = 0; i < columns.size(); i++) {
+                writer.write(i == 0 ? "" : ",");
+                writer.write(columns.get(i).name());
+            }
+            writer.write("\r\n");
+        }
+        int inPage = 0;
+        for (T row : rows) {
+            if (format.equals("csv")) {
+                for (int i = 0; i < columns.size(); i++) {
+                    writer.write(i == 0 ? "" : ",");
+                    writer.write(csvField(columns.get(i).value().apply(row)));
+                }
+                writer.write("\r\n");
+            } else {
+                generator.writeObject(row);
+                generator.writeRaw('\n');
+            }
+            if (++inPage == PAGE_SIZE) {
+                // Blocks while the client is behind, before the next page is requested
+                flush(generator, writer);
+                inPage = 0;
+            }
+        }
+        flush(generator, writer);
+    }
+
+    // The generator flushes the writer and the stream behind it
+    private static void flush(JsonGenerator generator, Writer writer) throws IOException {
+        if (generator != null) {
+            generator.flush();
+        } else {
+            writer.flush();
+        }
+    }
+
+    private static String csvField(Object value) {
+        if (value == null) {
+            return "";
+        }
+        String text = value.toString();
+        if (text.indexOf(',') < 0 && text.indexOf('"') < 0 && text.indexOf('\n') < 0 && text.indexOf('\r') < 0) {
+            return text;
+        }
+        return "\"" + text.replace("\"", "\"\"") + "\"";
+    }
+
+    private boolean isAuthorized(HttpServletRequest request) {
+        String authorization = request.getHeader("Authorization");
+        if (token.length == 0 || authorization == null || !authorization.startsWith("Bearer ")) {
+            return false;
+        }
+        byte[] presented = authorization.substring("Bearer ".length()).trim().getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(token, presented);
+    }
+}
@@ -0,0 +1,39 @@
+package dev.renting.users;
+
+import dev.renting.delegations.Car;
+
+// The car copied into a user booking, as a binary attribute (see BinaryAttributeConverter)
+public class CarBinaryConverter extends BinaryAttributeConverter<Car> {
+
+    private static final int VERSION = 1;
+
+    public CarBinaryConverter() {
+        super(Car.class, VERSION);
+    }
+
+    @Override
+    void write(Car car, Output out) {
+        out.writeString(car.getDelegationId());
+        out.writeString(car.getOperation());
+        out.writeString(car.getMake());
+        out.writeString(car.getModel());
+        out.writeInt(car.getYear());
+        out.writeString(car.getColor());
+        out.writeBoolean(car.isRented());
+        out.writeInt(car.getPrice());
+    }
+
+    @Override
+    Car read(Input in, int version) {
+        Car car = new Car();
+        car.setDelegationId(in.readString());
+        car.setOperation(in.readString());
+        car.setMake(in.readString());
+        car.setModel(in.readString());
+        car.setYear(in.readInt());
+        car.setColor(in.readString());
+        car.setRented(in.readBoolean());
+        car.setPrice(in.readInt());
+        return car;
+    }
+}
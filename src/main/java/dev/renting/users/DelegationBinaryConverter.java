@@ -0,0 +1,45 @@
+package dev.renting.users;
+
+import dev.renting.delegations.Delegation;
+
+// The pick-up and delivery delegations copied into a user booking, as binary attributes (see BinaryAttributeConverter)
+public class DelegationBinaryConverter extends BinaryAttributeConverter<Delegation> {
+
+    private static final int VERSION = 1;
+
+    public DelegationBinaryConverter() {
+        super(Delegation.class, VERSION);
+    }
+
+    @Override
+    void write(Delegation delegation, Output out) {
+        out.writeString(delegation.getDelegationId());
+        out.writeString(delegation.getOperation());
+        out.writeString(delegation.getName());
+        out.writeString(delegation.getAdress());
+        out.writeString(delegation.getCity());
+        out.writeString(delegation.getManager());
+        out.writeString(delegation.getTelf());
+        out.writeInt(delegation.getCarQuantity());
+        out.writeInt(delegation.getActiveBookings());
+        out.writeDouble(delegation.getLat());
+        out.writeDouble(delegation.getLongVal());
+    }
+
+    @Override
+    Delegation read(Input in, int version) {
+        Delegation delegation = new Delegation();
+        delegation.setDelegationId(in.readString());
+        delegation.setOperation(in.readString());
+        delegation.setName(in.readString());
+        delegation.setAdress(in.readString());
+        delegation.setCity(in.readString());
+        delegation.setManager(in.readString());
+        delegation.setTelf(in.readString());
+        delegation.setCarQuantity(in.readInt());
+        delegation.setActiveBookings(in.readInt());
+        delegation.setLat(in.readDouble());
+        delegation.setLongVal(in.readDouble());
+        return delegation;
+    }
+}
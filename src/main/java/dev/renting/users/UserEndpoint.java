@@ -3,6 +3,8 @@ package dev.renting.users;
 
 import com.vaadin.flow.server.auth.AnonymousAllowed;
 import com.vaadin.hilla.Endpoint;
+import dev.renting.delegations.BookingPage;
+import dev.renting.delegations.DelegationRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import java.util.List;
 
@@ -11,10 +13,12 @@ import java.util.List;
 public class UserEndpoint {
 
     private final UserRepository userRepository;
+    private final DelegationRepository delegationRepository;
 
     @Autowired
-    public UserEndpoint(UserRepository userRepository) {
+    public UserEndpoint(UserRepository userRepository, DelegationRepository delegationRepository) {
         this.userRepository = userRepository;
+        this.delegationRepository = delegationRepository;
     }
 
     // Save User
@@ -33,4 +37,10 @@ public class UserEndpoint {
         return userRepository.findBookingsByUserId(userId);
     }
 
+    // Get the car bookings of a user a page at a time, from the userId index of the Bookings table
+    public BookingPage getCarBookingsByUser(String userId, String cursor, int limit) {
+        return delegationRepository.queryBookingsByIndex(dev.renting.delegations.Booking.USER_INDEX, userId, cursor,
+                BookingPage.limit(limit));
+    }
+
 }
@@ -8,4 +8,7 @@ public interface UserRepository {
 
     List<Booking> findBookingsByUserId(String userId);
 
+    // Lazily scans the bookings of all users a page at a time, starting after the given key (null to start at the beginning)
+    Iterable<Booking> scanBookingsFrom(String exclusiveUserId, String exclusiveOperation, int pageSize);
+
 }
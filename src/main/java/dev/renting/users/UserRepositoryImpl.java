@@ -5,13 +5,18 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbEnhancedClient;
 import software.amazon.awssdk.enhanced.dynamodb.DynamoDbTable;
+import software.amazon.awssdk.enhanced.dynamodb.Expression;
 import software.amazon.awssdk.enhanced.dynamodb.Key;
 import software.amazon.awssdk.enhanced.dynamodb.TableSchema;
 import software.amazon.awssdk.enhanced.dynamodb.model.QueryConditional;
+import software.amazon.awssdk.enhanced.dynamodb.model.ScanEnhancedRequest;
+import software.amazon.awssdk.services.dynamodb.model.AttributeValue;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 @Repository
 public class UserRepositoryImpl implements UserRepository {
@@ -67,6 +72,27 @@ public class UserRepositoryImpl implements UserRepository {
         return bookings;
     }
 
+    @Override
+    public Iterable<Booking> scanBookingsFrom(String exclusiveUserId, String exclusiveOperation, int pageSize) {
+        DynamoDbTable<Booking> table = enhancedClient.table(tableName, TableSchema.fromBean(Booking.class));
+        Map<String, AttributeValue> expressionValues = new HashMap<>();
+        expressionValues.put(":val", AttributeValue.builder().s("booking").build());
+        ScanEnhancedRequest.Builder scanRequest = ScanEnhancedRequest.builder()
+                .filterExpression(Expression.builder()
+                        .expression("begins_with(operation, :val)")
+                        .expressionValues(expressionValues)
+                        .build())
+                .limit(pageSize);
+        if (exclusiveUserId != null) {
+            Map<String, AttributeValue> startKey = new HashMap<>();
+            startKey.put("userId", AttributeValue.builder().s(exclusiveUserId).build());
+            startKey.put("operation", AttributeValue.builder().s(exclusiveOperation).build());
+            scanRequest.exclusiveStartKey(startKey);
+        }
+        // The next page is only requested when iteration reaches it
+        return table.scan(scanRequest.build()).items();
+    }
+
 
 
 }